@@ -0,0 +1,80 @@
+/*
+ * Copyright (C) 2011 Patrik Åkerfeldt
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.taptwo.android.widget;
+
+import android.content.Context;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.BaseAdapter;
+
+/**
+ * A fake adapter of plain {@link View}s with stable ids, which reuses its
+ * convert views so that the cost measured is the one of the
+ * {@link ViewFlow}. The ids of the odd positions change on every
+ * {@link #changeIds()}, the even ones keep theirs.
+ */
+class BenchmarkAdapter extends BaseAdapter {
+
+	private final Context mContext;
+	private final int mCount;
+	private int mGeneration;
+	int getViewCalls;
+	int createdViews;
+
+	BenchmarkAdapter(Context context, int count) {
+		mContext = context;
+		mCount = count;
+	}
+
+	/**
+	 * Changes the ids of the odd positions and notifies the change.
+	 */
+	void changeIds() {
+		mGeneration++;
+		notifyDataSetChanged();
+	}
+
+	@Override
+	public int getCount() {
+		return mCount;
+	}
+
+	@Override
+	public Object getItem(int position) {
+		return null;
+	}
+
+	@Override
+	public long getItemId(int position) {
+		return (position & 1) == 0 || (mGeneration & 1) == 0 ? position
+				: ~position;
+	}
+
+	@Override
+	public boolean hasStableIds() {
+		return true;
+	}
+
+	@Override
+	public View getView(int position, View convertView, ViewGroup parent) {
+		getViewCalls++;
+		if (convertView == null) {
+			convertView = new View(mContext);
+			createdViews++;
+		}
+		return convertView;
+	}
+}
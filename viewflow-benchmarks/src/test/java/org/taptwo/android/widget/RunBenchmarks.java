@@ -0,0 +1,50 @@
+/*
+ * Copyright (C) 2011 Patrik Åkerfeldt
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.taptwo.android.widget;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+/**
+ * Runs the JMH benchmarks inside a Robolectric sandbox, where the Android
+ * classes the benchmarks call are available. The benchmarks cannot be
+ * forked into a JVM of their own, so they run in this one. JMH command
+ * line options are taken from the {@code jmh.args} system property.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE, sdk = 27, shadows = ShadowFrameworkAdapterView.class)
+public class RunBenchmarks {
+
+	@Test
+	public void runBenchmarks() throws Exception {
+		final List<String> args = new ArrayList<String>();
+		for (String arg : System.getProperty("jmh.args", "").trim().split("\\s+")) {
+			if (arg.length() > 0)
+				args.add(arg);
+		}
+		new Runner(new OptionsBuilder()
+				.parent(new CommandLineOptions(args.toArray(new String[args
+						.size()]))).forks(0).build()).run();
+	}
+}
@@ -0,0 +1,214 @@
+/*
+ * Copyright (C) 2011 Patrik Åkerfeldt
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.taptwo.android.widget;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.robolectric.RuntimeEnvironment;
+
+import android.view.MotionEvent;
+import android.view.View.MeasureSpec;
+
+/**
+ * Benchmarks a {@link ViewFlow} over a {@link BenchmarkAdapter}: switching
+ * views with a fling, {@link ViewFlow#setSelection(int)} and data set
+ * changes with stable ids. Each operation ends with the layout pass it
+ * requested, like the next frame would. The {@link ViewFlow} is not attached
+ * to a window, and its settle runs on a simulated clock.<br/>
+ * At the end of each trial the getView calls, recycle hits and recycle
+ * misses per operation are printed.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(0)
+public class ViewFlowBenchmark {
+
+	private static final int WIDTH = 480;
+	private static final int HEIGHT = 800;
+
+	@Param({ "10", "100", "1000", "10000", "100000" })
+	int adapterSize;
+
+	@Param({ "1", "3", "5", "10" })
+	int sideBuffer;
+
+	private BenchmarkAdapter adapter;
+	private ViewFlow flow;
+	private long time = 1000;
+	private int direction = 1;
+	private int[] jumps;
+	private int jump;
+	private long operations;
+	private int getViewCalls;
+	private int recycleHits;
+	private int recycleMisses;
+
+	private final SettleScroller.Clock clock = new SettleScroller.Clock() {
+
+		@Override
+		public long now() {
+			return time;
+		}
+	};
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		adapter = new BenchmarkAdapter(RuntimeEnvironment.application,
+				adapterSize);
+		flow = new ViewFlow(RuntimeEnvironment.application, sideBuffer);
+		flow.setSettleClock(clock);
+		flow.setIncrementalFill(false);
+		// An even position keeps its id on data set changes
+		flow.setAdapter(adapter, adapterSize / 2 & ~1);
+		frame();
+
+		final int position = flow.getSelectedItemPosition();
+		fling(1);
+		if (flow.getSelectedItemPosition() != position + 1)
+			throw new IllegalStateException("A fling from " + position
+					+ " ended on " + flow.getSelectedItemPosition());
+		fling(-1);
+
+		final Random random = new Random(42);
+		jumps = new int[1024];
+		for (int i = 0; i < jumps.length; i++) {
+			// Half of the jumps land anywhere in the adapter, the others
+			// within the buffered range, like a tap on an indicator. The
+			// latter are stored as negative offsets from the current position.
+			jumps[i] = random.nextBoolean() ? random.nextInt(adapterSize)
+					: -1 - random.nextInt(2 * sideBuffer + 1);
+		}
+	}
+
+	@Setup(Level.Iteration)
+	public void startCounting() {
+		operations = 0;
+		getViewCalls = adapter.getViewCalls;
+		recycleHits = flow.getRecycleHitCount();
+		recycleMisses = flow.getRecycleMissCount();
+	}
+
+	@TearDown(Level.Iteration)
+	public void printCounts() {
+		if (operations == 0)
+			return;
+		System.out.printf("(%.2f getView calls, %.2f recycle hits, "
+				+ "%.2f recycle misses per operation)%n",
+				(adapter.getViewCalls - getViewCalls) / (double) operations,
+				(flow.getRecycleHitCount() - recycleHits) / (double) operations,
+				(flow.getRecycleMissCount() - recycleMisses)
+						/ (double) operations);
+	}
+
+	/**
+	 * Flings to the next view, bouncing at the ends of the adapter, and lets
+	 * the settle end with the view switch.
+	 */
+	@Benchmark
+	public int switchViews() {
+		final int position = flow.getSelectedItemPosition();
+		if (position + direction < 0 || position + direction >= adapterSize)
+			direction = -direction;
+		fling(direction);
+		operations++;
+		return flow.getSelectedItemPosition();
+	}
+
+	/**
+	 * Jumps to another position, half of the time within the buffered range.
+	 */
+	@Benchmark
+	public int setSelection() {
+		int position = jumps[jump];
+		jump = (jump + 1) & (jumps.length - 1);
+		if (position < 0)
+			position = flow.getSelectedItemPosition() - sideBuffer - 1
+					- position;
+		flow.setSelection(position);
+		frame();
+		operations++;
+		return flow.getSelectedItemPosition();
+	}
+
+	/**
+	 * Changes the ids of half of the items. The current item keeps its id,
+	 * the buffered views of the others are rebound.
+	 */
+	@Benchmark
+	public int dataSetChanged() {
+		adapter.changeIds();
+		frame();
+		operations++;
+		return flow.getSelectedItemPosition();
+	}
+
+	/**
+	 * Lays the {@link ViewFlow} out if requested and advances its scroll.
+	 */
+	private void frame() {
+		if (flow.isLayoutRequested()) {
+			flow.measure(MeasureSpec.makeMeasureSpec(WIDTH,
+					MeasureSpec.EXACTLY), MeasureSpec.makeMeasureSpec(HEIGHT,
+					MeasureSpec.EXACTLY));
+			flow.layout(0, 0, WIDTH, HEIGHT);
+		}
+		flow.computeScroll();
+	}
+
+	private void touch(int action, long eventTime, float x) {
+		final MotionEvent event = MotionEvent.obtain(time, eventTime, action,
+				x * WIDTH, HEIGHT / 2f, 0);
+		flow.dispatchTouchEvent(event);
+		event.recycle();
+	}
+
+	/**
+	 * Drags over a third of the screen in 40 ms and releases, then runs the
+	 * frames which finish the settle and switch the view.
+	 */
+	private void fling(int direction) {
+		final float from = direction > 0 ? 0.7f : 0.3f;
+		final float distance = direction > 0 ? -0.35f : 0.35f;
+		time += 1000;
+		touch(MotionEvent.ACTION_DOWN, time, from);
+		for (int i = 1; i <= 4; i++)
+			touch(MotionEvent.ACTION_MOVE, time + 10 * i, from + distance * i
+					/ 4);
+		touch(MotionEvent.ACTION_UP, time + 40, from + distance);
+		// The settle ends on the first frame after its duration, the view is
+		// switched on the next one
+		time += 1000;
+		frame();
+		frame();
+	}
+}
@@ -5,7 +5,7 @@ import java.text.SimpleDateFormat;
 import java.util.Calendar;
 import java.util.Date;
 
-import org.taptwo.android.widget.TitleProvider;
+import org.taptwo.android.widget.AsyncTitleProvider;
 import org.taptwo.android.widget.viewflow.example.R;
 
 import android.content.Context;
@@ -18,7 +18,7 @@ import android.widget.ProgressBar;
 import android.widget.TextView;
 
 
-public class AsyncAdapter extends BaseAdapter implements TitleProvider {
+public class AsyncAdapter extends BaseAdapter implements AsyncTitleProvider {
 
 	private LayoutInflater mInflater;
 	
@@ -94,7 +94,15 @@ public class AsyncAdapter extends BaseAdapter implements TitleProvider {
 
 	@Override
 	public String getTitle(int position) {
-		return dfTitle.format( dates[position] );
+		// Called on background threads, and DateFormat is not thread safe
+		synchronized (dfTitle) {
+			return dfTitle.format( dates[position] );
+		}
+	}
+
+	@Override
+	public String getPlaceholder(int position) {
+		return "...";
 	}
 
 	@Override
@@ -0,0 +1,107 @@
+/*
+ * Copyright (C) 2011 Patrik Åkerfeldt
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.taptwo.android.widget;
+
+import com.google.monitoring.runtime.instrumentation.AllocationRecorder;
+import com.google.monitoring.runtime.instrumentation.Sampler;
+
+/**
+ * Counts allocations with the java-allocation-instrumenter agent, for tests
+ * run on a JVM. Only the allocations of the counting thread are counted.
+ * Allocations made by Robolectric to emulate the Android runtime do not
+ * happen on a device and are left out: an allocation is only counted if a
+ * frame of the library or of the tests comes before any frame of
+ * Robolectric on its stack.<br/>
+ * With {@code -Dviewflow.allocations.trace=true} the stack of every counted
+ * allocation is printed.
+ */
+class InstrumentedAllocationCounter implements AllocationCounter.Counter,
+		Sampler {
+
+	private static final String VIEWFLOW = "org.taptwo.";
+	private static final String ROBOLECTRIC = "org.robolectric.";
+	private static final String INSTRUMENTER = "com.google.monitoring.";
+	private static final boolean TRACE = Boolean
+			.getBoolean("viewflow.allocations.trace");
+
+	private volatile Thread mThread;
+	private int mCount;
+	private long mSize;
+
+	@Override
+	public void start() {
+		mCount = 0;
+		mSize = 0;
+		AllocationRecorder.addSampler(this);
+		mThread = Thread.currentThread();
+	}
+
+	@Override
+	public int getCount() {
+		return mCount;
+	}
+
+	@Override
+	public int getSize() {
+		return (int) mSize;
+	}
+
+	@Override
+	public void stop() {
+		mThread = null;
+		AllocationRecorder.removeSampler(this);
+	}
+
+	@Override
+	public void sampleAllocation(int count, String desc, Object newObj,
+			long size) {
+		if (Thread.currentThread() != mThread)
+			return;
+		final StackTraceElement[] stack = new Throwable().getStackTrace();
+		if (!isViewFlowAllocation(stack))
+			return;
+		mCount++;
+		if (size > 0)
+			mSize += size;
+		if (TRACE) {
+			final StringBuilder trace = new StringBuilder("Allocated ")
+					.append(desc);
+			for (int i = 0; i < stack.length; i++) {
+				final String className = stack[i].getClassName();
+				if (className.startsWith(ROBOLECTRIC))
+					break;
+				if (!className.startsWith(INSTRUMENTER)
+						&& !className.equals(getClass().getName()))
+					trace.append("\n\tat ").append(stack[i]);
+			}
+			System.out.println(trace);
+		}
+	}
+
+	private boolean isViewFlowAllocation(StackTraceElement[] stack) {
+		for (int i = 0; i < stack.length; i++) {
+			final String className = stack[i].getClassName();
+			if (className.startsWith(INSTRUMENTER)
+					|| className.equals(getClass().getName()))
+				continue;
+			if (className.startsWith(ROBOLECTRIC))
+				return false;
+			if (className.startsWith(VIEWFLOW))
+				return true;
+		}
+		return false;
+	}
+}
@@ -0,0 +1,41 @@
+/*
+ * Copyright (C) 2011 Patrik Åkerfeldt
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.taptwo.android.widget;
+
+import org.junit.runners.model.FrameworkMethod;
+import org.junit.runners.model.InitializationError;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.internal.bytecode.InstrumentationConfiguration;
+
+/**
+ * Runs tests in a Robolectric sandbox which shares the classes of the
+ * allocation instrumenter with the agent, so that a sampler installed from a
+ * test receives the allocations of the instrumented classes.
+ */
+public class JvmTestRunner extends RobolectricTestRunner {
+
+	public JvmTestRunner(Class<?> testClass) throws InitializationError {
+		super(testClass);
+	}
+
+	@Override
+	protected InstrumentationConfiguration createClassLoaderConfig(
+			FrameworkMethod method) {
+		return new InstrumentationConfiguration.Builder(
+				super.createClassLoaderConfig(method)).doNotAcquirePackage(
+				"com.google.monitoring.").build();
+	}
+}
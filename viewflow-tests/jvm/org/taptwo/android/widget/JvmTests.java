@@ -0,0 +1,107 @@
+/*
+ * Copyright (C) 2011 Patrik Åkerfeldt
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.taptwo.android.widget;
+
+import java.util.Enumeration;
+
+import junit.framework.AssertionFailedError;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestFailure;
+import junit.framework.TestResult;
+import junit.framework.TestSuite;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.runner.RunWith;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+import org.robolectric.shadows.ShadowLog;
+
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+/**
+ * Runs the instrumentation tests of this project on a JVM, in a Robolectric
+ * sandbox. Each test class runs as a JUnit 3 suite, with the application of
+ * the sandbox as the context of its tests. The result of every test and the
+ * log of the tests are printed.
+ */
+@RunWith(JvmTestRunner.class)
+@Config(manifest = Config.NONE, sdk = 27, shadows = ShadowFrameworkAdapterView.class)
+public class JvmTests {
+
+	@Before
+	public void setUp() {
+		ShadowLog.stream = System.out;
+		// Debug logging is off by default on a device, and allocates
+		ShadowLog.setLoggable("viewflow", Log.INFO);
+		AllocationCounter.setCounter(new InstrumentedAllocationCounter());
+	}
+
+	@After
+	public void tearDown() {
+		AllocationCounter.setCounter(null);
+	}
+
+	@org.junit.Test
+	public void gestureReplayTest() {
+		run(GestureReplayTest.class);
+	}
+
+	@org.junit.Test
+	public void allocationTest() {
+		run(AllocationTest.class);
+	}
+
+	@org.junit.Test
+	public void touchPathTest() {
+		run(TouchPathTest.class);
+	}
+
+	@org.junit.Test
+	public void settleCurveTest() {
+		run(SettleCurveTest.class);
+	}
+
+	private static void run(Class<? extends TestCase> testClass) {
+		final StringBuilder failures = new StringBuilder();
+		final Enumeration<Test> tests = new TestSuite(testClass).tests();
+		while (tests.hasMoreElements()) {
+			final TestCase test = (TestCase) tests.nextElement();
+			if (test instanceof AndroidTestCase)
+				((AndroidTestCase) test).setContext(RuntimeEnvironment.application);
+			final TestResult result = new TestResult();
+			test.run(result);
+			final String name = testClass.getSimpleName() + "."
+					+ test.getName();
+			System.out.println(name + ": "
+					+ (result.wasSuccessful() ? "passed" : "FAILED"));
+			append(failures, name, result.failures());
+			append(failures, name, result.errors());
+		}
+		if (failures.length() > 0)
+			throw new AssertionFailedError(failures.toString());
+	}
+
+	private static void append(StringBuilder failures, String name,
+			Enumeration<TestFailure> results) {
+		while (results.hasMoreElements()) {
+			failures.append(name).append(": ")
+					.append(results.nextElement().trace()).append('\n');
+		}
+	}
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright (C) 2011 Patrik Åkerfeldt
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.taptwo.android.widget;
+
+import static org.robolectric.shadow.api.Shadow.directlyOn;
+
+import org.robolectric.annotation.Implementation;
+import org.robolectric.annotation.Implements;
+import org.robolectric.shadows.ShadowAdapterView;
+import org.robolectric.shadows.ShadowView;
+import org.robolectric.shadows.ShadowViewGroup;
+
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.Adapter;
+import android.widget.AdapterView;
+
+/**
+ * Scrolls adapter views, like {@link ViewFlow}, and lets their children keep
+ * the touch from them with the code of the framework. {@link ShadowView}
+ * keeps the scroll position in the shadow, which the framework does not
+ * read: {@link View#scrollBy(int, int)} would scroll from 0 and drawing
+ * would ignore the scroll position. {@link ShadowViewGroup} does the same
+ * with {@link ViewGroup#requestDisallowInterceptTouchEvent(boolean)}, so
+ * the touch would always be intercepted.
+ */
+@Implements(AdapterView.class)
+public class ShadowFrameworkAdapterView<T extends Adapter> extends
+		ShadowAdapterView<T> {
+
+	@Implementation
+	@Override
+	public void scrollTo(int x, int y) {
+		directlyOn(realView, View.class).scrollTo(x, y);
+	}
+
+	@Implementation
+	@Override
+	public int getScrollX() {
+		return directlyOn(realView, View.class).getScrollX();
+	}
+
+	@Implementation
+	@Override
+	public int getScrollY() {
+		return directlyOn(realView, View.class).getScrollY();
+	}
+
+	@Implementation
+	@Override
+	public void setScrollX(int value) {
+		directlyOn(realView, View.class).setScrollX(value);
+	}
+
+	@Implementation
+	@Override
+	public void setScrollY(int value) {
+		directlyOn(realView, View.class).setScrollY(value);
+	}
+
+	@Implementation
+	@Override
+	public void requestDisallowInterceptTouchEvent(boolean disallow) {
+		directlyOn((ViewGroup) realView, ViewGroup.class)
+				.requestDisallowInterceptTouchEvent(disallow);
+	}
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright (C) 2011 Patrik Åkerfeldt
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.taptwo.android.widget;
+
+import android.os.Debug;
+
+/**
+ * Counts the objects allocated by the current thread between
+ * {@link #start()} and {@link #stop()}. On a device the allocation counters
+ * of {@link Debug} are used. A build running the tests on a JVM installs its
+ * own counter with {@link #setCounter(Counter)}.
+ */
+class AllocationCounter {
+
+	interface Counter {
+		void start();
+
+		int getCount();
+
+		int getSize();
+
+		void stop();
+	}
+
+	private static final Counter DEBUG_COUNTER = new Counter() {
+
+		@Override
+		public void start() {
+			Debug.startAllocCounting();
+			Debug.resetThreadAllocCount();
+			Debug.resetThreadAllocSize();
+		}
+
+		@Override
+		public int getCount() {
+			return Debug.getThreadAllocCount();
+		}
+
+		@Override
+		public int getSize() {
+			return Debug.getThreadAllocSize();
+		}
+
+		@Override
+		public void stop() {
+			Debug.stopAllocCounting();
+		}
+	};
+
+	private static Counter sCounter = DEBUG_COUNTER;
+
+	private AllocationCounter() {
+	}
+
+	/**
+	 * @param counter
+	 *            the counter to use, or null for the one of {@link Debug}
+	 */
+	static void setCounter(Counter counter) {
+		sCounter = counter != null ? counter : DEBUG_COUNTER;
+	}
+
+	/**
+	 * Resets the counts and starts counting.
+	 */
+	static void start() {
+		sCounter.start();
+	}
+
+	/**
+	 * @return the number of objects allocated since {@link #start()}
+	 */
+	static int getCount() {
+		return sCounter.getCount();
+	}
+
+	/**
+	 * @return the bytes allocated since {@link #start()}
+	 */
+	static int getSize() {
+		return sCounter.getSize();
+	}
+
+	/**
+	 * Stops counting.
+	 */
+	static void stop() {
+		sCounter.stop();
+	}
+}
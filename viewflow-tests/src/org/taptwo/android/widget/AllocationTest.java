@@ -0,0 +1,250 @@
+/*
+ * Copyright (C) 2011 Patrik Åkerfeldt
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.taptwo.android.widget;
+
+import org.taptwo.android.widget.ViewFlow.ViewScrollListener;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.test.AndroidTestCase;
+import android.view.MotionEvent;
+import android.view.View;
+import android.view.View.MeasureSpec;
+
+/**
+ * Counts the objects allocated by the hot paths of scrolling, and fails when
+ * a path exceeds its allocation budget. Each path is warmed up first, so
+ * that lazily created objects and caches are not counted.
+ */
+public class AllocationTest extends AndroidTestCase {
+
+	// Objects allowed per call of each hot path
+	private static final int INDICATOR_DRAW_BUDGET = 0;
+	private static final int COMPUTE_SCROLL_BUDGET = 0;
+	private static final int TOUCH_MOVE_BUDGET = 0;
+	private static final int VIEW_SWITCH_BUDGET = 0;
+
+	private static final int WIDTH = 480;
+	private static final int HEIGHT = 800;
+	private static final int INDICATOR_HEIGHT = 40;
+	private static final int COUNT = 100;
+	private static final int START = 50;
+	private static final int ITERATIONS = 100;
+
+	private TestAdapter mAdapter;
+	private ViewFlow mFlow;
+	private GestureReplay mReplay;
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		mAdapter = new TestAdapter(getContext(), COUNT);
+		mFlow = new ViewFlow(getContext());
+		mFlow.setAdapter(mAdapter, START);
+		mReplay = new GestureReplay(mFlow, WIDTH, HEIGHT);
+		// Metrics are opt-in, the budgets are for a ViewFlow without them
+		mFlow.setMetricsEnabled(false);
+	}
+
+	private static void startCounting() {
+		AllocationCounter.start();
+	}
+
+	private static int stopCounting() {
+		final int allocations = AllocationCounter.getCount();
+		AllocationCounter.stop();
+		return allocations;
+	}
+
+	private static void assertWithinBudget(String path, int budget,
+			int allocations, int calls) {
+		assertTrue(path + " allocated " + allocations + " objects in " + calls
+				+ " calls, the budget is " + budget + " per call",
+				allocations <= budget * calls);
+	}
+
+	private static void recycle(MotionEvent[] events) {
+		for (int i = 0; i < events.length; i++)
+			events[i].recycle();
+	}
+
+	/**
+	 * Alternating flings to the next and to the previous view, each settled
+	 * before the next one starts.
+	 */
+	private static Gesture switches(int count) {
+		final Gesture gesture = new Gesture("switches");
+		for (int i = 0; i < count; i++) {
+			if (i % 2 == 0)
+				gesture.swipe(i * 2000L, 80, 0.8f, 0.45f);
+			else
+				gesture.swipe(i * 2000L, 80, 0.2f, 0.55f);
+		}
+		return gesture;
+	}
+
+	/**
+	 * Scrolls an indicator back and forth around the start position and draws
+	 * it after every step, the way a ViewFlow does while being dragged.
+	 */
+	private static void scrollAndDraw(View indicator, Canvas canvas, int steps) {
+		for (int i = 0; i < steps; i++) {
+			final int step = i % 40;
+			final int scroll = (step < 20 ? step : 40 - step) * WIDTH / 10;
+			final int position = START - 1 + scroll / WIDTH;
+			((ViewScrollListener) indicator).onScrolled(position,
+					(scroll % WIDTH) / (float) WIDTH);
+			if (scroll % WIDTH == 0)
+				((FlowIndicator) indicator).onSwitched(null, position);
+			indicator.draw(canvas);
+		}
+	}
+
+	private void assertIndicatorDrawWithinBudget(String name, View indicator) {
+		((FlowIndicator) indicator).setViewFlow(mFlow);
+		indicator.measure(MeasureSpec.makeMeasureSpec(WIDTH,
+				MeasureSpec.EXACTLY), MeasureSpec.makeMeasureSpec(
+				INDICATOR_HEIGHT, MeasureSpec.EXACTLY));
+		indicator.layout(0, 0, WIDTH, INDICATOR_HEIGHT);
+		final Canvas canvas = new Canvas(Bitmap.createBitmap(WIDTH,
+				INDICATOR_HEIGHT, Bitmap.Config.RGB_565));
+
+		scrollAndDraw(indicator, canvas, 40);
+		startCounting();
+		scrollAndDraw(indicator, canvas, ITERATIONS);
+		// Counted before the message of the assertion is built
+		final int allocations = stopCounting();
+		assertWithinBudget(name + ".onDraw()", INDICATOR_DRAW_BUDGET,
+				allocations, ITERATIONS);
+	}
+
+	public void testCircleFlowIndicatorDraw() {
+		assertIndicatorDrawWithinBudget("CircleFlowIndicator",
+				new CircleFlowIndicator(getContext()));
+	}
+
+	public void testFadingCircleFlowIndicatorDraw() {
+		// Every scroll restarts the fade out countdown
+		final int[] posts = new int[1];
+		final CircleFlowIndicator indicator = new CircleFlowIndicator(
+				getContext()) {
+
+			@Override
+			public boolean postDelayed(Runnable action, long delayMillis) {
+				posts[0]++;
+				return super.postDelayed(action, delayMillis);
+			}
+		};
+		indicator.setFadeOutTime(1000);
+		assertIndicatorDrawWithinBudget("Fading CircleFlowIndicator", indicator);
+		// A message is allocated by each post, whether counted by the test or
+		// not, so the countdown must not be posted again on every scroll
+		assertEquals("fade out posts", 1, posts[0]);
+	}
+
+	public void testTitleFlowIndicatorDraw() {
+		final TitleFlowIndicator indicator = new TitleFlowIndicator(
+				getContext());
+		indicator.setTitleProvider(mAdapter);
+		assertIndicatorDrawWithinBudget("TitleFlowIndicator", indicator);
+	}
+
+	public void testTitleFlowIndicatorBitmapDraw() {
+		final TitleFlowIndicator indicator = new TitleFlowIndicator(
+				getContext());
+		indicator.setTitleProvider(mAdapter);
+		indicator.setTitleBitmapCacheSize(1 << 20);
+		assertIndicatorDrawWithinBudget("TitleFlowIndicator with bitmaps",
+				indicator);
+	}
+
+	public void testComputeScroll() {
+		final MotionEvent[] warmUp = mReplay.obtainEvents(switches(2),
+				mReplay.now());
+		mReplay.play(warmUp, new GestureReplay.Result());
+		recycle(warmUp);
+
+		final MotionEvent[] fling = mReplay.obtainEvents(new Gesture("fling")
+				.swipe(0, 80, 0.8f, 0.45f), mReplay.now());
+		for (int i = 0; i < fling.length; i++) {
+			mReplay.advance(Gesture.SAMPLE_MILLIS);
+			mFlow.onTouchEvent(fling[i]);
+		}
+		recycle(fling);
+		assertTrue(mFlow.isSettling());
+
+		// The settle ends with a view switch, which has the same budget
+		int calls = 0;
+		startCounting();
+		for (; calls < 10 * ITERATIONS && mFlow.isSettling(); calls++) {
+			mReplay.advance(2);
+			mFlow.computeScroll();
+		}
+		assertWithinBudget("ViewFlow.computeScroll()", COMPUTE_SCROLL_BUDGET,
+				stopCounting(), calls);
+	}
+
+	public void testTouchMove() {
+		// A drag back and forth over a fifth of the screen
+		final Gesture drag = new Gesture("drag");
+		drag.add(0, MotionEvent.ACTION_DOWN, 0.5f);
+		for (int i = 1; i <= 2 * ITERATIONS; i++) {
+			final int step = i % 40;
+			drag.add(i * Gesture.SAMPLE_MILLIS, MotionEvent.ACTION_MOVE,
+					0.5f - (step < 20 ? step : 40 - step) / 100f);
+		}
+		drag.add(2 * ITERATIONS * Gesture.SAMPLE_MILLIS,
+				MotionEvent.ACTION_CANCEL, 0.5f);
+		final MotionEvent[] events = mReplay.obtainEvents(drag, mReplay.now());
+
+		// The first half starts the drag and warms up
+		for (int i = 0; i <= ITERATIONS; i++)
+			mFlow.onTouchEvent(events[i]);
+		startCounting();
+		for (int i = ITERATIONS + 1; i <= 2 * ITERATIONS; i++)
+			mFlow.onTouchEvent(events[i]);
+		final int allocations = stopCounting();
+		mFlow.onTouchEvent(events[events.length - 1]);
+		recycle(events);
+
+		assertWithinBudget("ViewFlow.onTouchEvent(ACTION_MOVE)",
+				TOUCH_MOVE_BUDGET, allocations, ITERATIONS);
+	}
+
+	public void testViewSwitch() {
+		final MotionEvent[] warmUp = mReplay.obtainEvents(switches(4),
+				mReplay.now());
+		mReplay.play(warmUp, new GestureReplay.Result());
+		recycle(warmUp);
+		assertEquals(START, mFlow.getSelectedItemPosition());
+
+		final int switches = 20;
+		final MotionEvent[] events = mReplay.obtainEvents(switches(switches),
+				mReplay.now());
+		final GestureReplay.Result result = new GestureReplay.Result();
+		final int createdViews = mAdapter.getCreatedViewCount();
+		startCounting();
+		mReplay.play(events, result);
+		final int allocations = stopCounting();
+		recycle(events);
+
+		assertEquals(START, mFlow.getSelectedItemPosition());
+		assertEquals("views were created instead of recycled", createdViews,
+				mAdapter.getCreatedViewCount());
+		assertWithinBudget("Switching views", VIEW_SWITCH_BUDGET, allocations,
+				switches);
+	}
+}
@@ -0,0 +1,190 @@
+/*
+ * Copyright (C) 2011 Patrik Åkerfeldt
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.taptwo.android.widget;
+
+import android.view.MotionEvent;
+
+/**
+ * A recorded stream of touch events, replayed on a {@link ViewFlow} by a
+ * {@link GestureReplay}. Event times are in milliseconds from the start of
+ * the gesture and x coordinates are fractions of the width of the
+ * {@link ViewFlow}, so that a gesture replays the same on any screen.<br/>
+ * Gestures are either recorded from a device with {@link #record(MotionEvent, int)}
+ * or built from swipes and presses, like the canonical gestures below.
+ */
+class Gesture {
+
+	/**
+	 * The interval between two move events of a swipe, like a touch screen
+	 * sampling at about 100 Hz.
+	 */
+	static final int SAMPLE_MILLIS = 10;
+
+	private final String mName;
+	private long[] mTimes = new long[32];
+	private int[] mActions = new int[32];
+	private float[] mXs = new float[32];
+	private int mSize;
+	private long mRecordStart = -1;
+
+	Gesture(String name) {
+		mName = name;
+	}
+
+	/**
+	 * A slow drag over two thirds of the screen, released without velocity.
+	 */
+	static Gesture slowDrag() {
+		return new Gesture("slow drag").swipe(0, 1200, 0.85f, 0.2f);
+	}
+
+	/**
+	 * A short and fast fling to the next view.
+	 */
+	static Gesture fastFling() {
+		return new Gesture("fast fling").swipe(0, 80, 0.8f, 0.45f);
+	}
+
+	/**
+	 * Flings to the next and previous views in rapid succession, each fling
+	 * catching the settle of the previous one.
+	 */
+	static Gesture backAndForth() {
+		return new Gesture("back and forth").swipe(0, 80, 0.8f, 0.45f)
+				.swipe(200, 80, 0.2f, 0.55f).swipe(400, 80, 0.8f, 0.45f)
+				.swipe(600, 80, 0.2f, 0.55f);
+	}
+
+	/**
+	 * A fast fling stopped by a touch while settling, then released.
+	 */
+	static Gesture interruptedFling() {
+		return new Gesture("interrupted fling").swipe(0, 80, 0.8f, 0.45f)
+				.press(150, 200, 0.5f);
+	}
+
+	/**
+	 * @return all canonical gestures
+	 */
+	static Gesture[] canonical() {
+		return new Gesture[] { slowDrag(), fastFling(), backAndForth(),
+				interruptedFling() };
+	}
+
+	String getName() {
+		return mName;
+	}
+
+	int size() {
+		return mSize;
+	}
+
+	long getTime(int index) {
+		return mTimes[index];
+	}
+
+	int getAction(int index) {
+		return mActions[index];
+	}
+
+	float getX(int index) {
+		return mXs[index];
+	}
+
+	/**
+	 * @return the time of the last event
+	 */
+	long getDuration() {
+		return mSize > 0 ? mTimes[mSize - 1] : 0;
+	}
+
+	/**
+	 * Adds an event.
+	 *
+	 * @param time
+	 *            the time from the start of the gesture in milliseconds, not
+	 *            before the previous event
+	 * @param action
+	 *            one of {@link MotionEvent#ACTION_DOWN},
+	 *            {@link MotionEvent#ACTION_MOVE}, {@link MotionEvent#ACTION_UP}
+	 *            or {@link MotionEvent#ACTION_CANCEL}
+	 * @param x
+	 *            the x coordinate as a fraction of the width
+	 */
+	Gesture add(long time, int action, float x) {
+		if (mSize > 0 && time < mTimes[mSize - 1])
+			throw new IllegalArgumentException("Event at " + time
+					+ " is before the previous one at " + mTimes[mSize - 1]);
+		if (mSize == mTimes.length) {
+			final int capacity = mSize * 2;
+			long[] times = new long[capacity];
+			int[] actions = new int[capacity];
+			float[] xs = new float[capacity];
+			System.arraycopy(mTimes, 0, times, 0, mSize);
+			System.arraycopy(mActions, 0, actions, 0, mSize);
+			System.arraycopy(mXs, 0, xs, 0, mSize);
+			mTimes = times;
+			mActions = actions;
+			mXs = xs;
+		}
+		mTimes[mSize] = time;
+		mActions[mSize] = action;
+		mXs[mSize] = x;
+		mSize++;
+		return this;
+	}
+
+	/**
+	 * Adds a swipe moving linearly from fromX to toX.
+	 */
+	Gesture swipe(long start, long duration, float fromX, float toX) {
+		add(start, MotionEvent.ACTION_DOWN, fromX);
+		for (long t = SAMPLE_MILLIS; t < duration; t += SAMPLE_MILLIS) {
+			add(start + t, MotionEvent.ACTION_MOVE, fromX + (toX - fromX) * t
+					/ duration);
+		}
+		add(start + duration, MotionEvent.ACTION_MOVE, toX);
+		return add(start + duration, MotionEvent.ACTION_UP, toX);
+	}
+
+	/**
+	 * Adds a touch held still for the given duration.
+	 */
+	Gesture press(long start, long duration, float x) {
+		add(start, MotionEvent.ACTION_DOWN, x);
+		return add(start + duration, MotionEvent.ACTION_UP, x);
+	}
+
+	/**
+	 * Records an event received by a view of the given width, including the
+	 * historical samples of a batched move.
+	 */
+	Gesture record(MotionEvent ev, int width) {
+		if (mRecordStart < 0)
+			mRecordStart = ev.getEventTime();
+		for (int i = 0; i < ev.getHistorySize(); i++) {
+			add(ev.getHistoricalEventTime(i) - mRecordStart,
+					MotionEvent.ACTION_MOVE, ev.getHistoricalX(i) / width);
+		}
+		return add(ev.getEventTime() - mRecordStart, ev.getAction(), ev.getX()
+				/ width);
+	}
+
+	@Override
+	public String toString() {
+		return mName;
+	}
+}
@@ -0,0 +1,229 @@
+/*
+ * Copyright (C) 2011 Patrik Åkerfeldt
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.taptwo.android.widget;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.view.MotionEvent;
+import android.view.View.MeasureSpec;
+
+/**
+ * Replays {@link Gesture}s on a {@link ViewFlow} which is not attached to a
+ * window, driving its frames and the clock of its settle animation, so that
+ * a replay does not depend on the timing of the device.<br/>
+ * A frame lays out the {@link ViewFlow} if requested, advances its scroll
+ * and draws it into an offscreen bitmap. Touch events are dispatched at the
+ * start of the first frame at or after their time, like the input of a
+ * frame.
+ */
+class GestureReplay {
+
+	static final int FRAME_MILLIS = 16;
+
+	/**
+	 * The frames given to the {@link ViewFlow} to settle after the last
+	 * event.
+	 */
+	private static final int MAX_SETTLE_FRAMES = 300;
+
+	/**
+	 * The results of a replay.
+	 */
+	static class Result {
+		String gesture;
+		int position;
+		int scrollX;
+		boolean settled;
+		int getViewCalls;
+		int layoutPasses;
+		int switches;
+		int allocations;
+		int allocatedBytes;
+		int frames;
+		long maxFrameMicros;
+		long totalFrameMicros;
+
+		/**
+		 * @return the simulated duration of the replay in milliseconds
+		 */
+		long getSimulatedMillis() {
+			return (long) frames * FRAME_MILLIS;
+		}
+
+		/**
+		 * Tells whether two replays behaved the same, leaving out the time
+		 * measurements.
+		 */
+		boolean sameBehavior(Result other) {
+			return position == other.position && scrollX == other.scrollX
+					&& settled == other.settled
+					&& getViewCalls == other.getViewCalls
+					&& layoutPasses == other.layoutPasses
+					&& switches == other.switches && frames == other.frames;
+		}
+
+		@Override
+		public String toString() {
+			return gesture + ": position " + position + ", scrollX " + scrollX
+					+ (settled ? "" : " (not settled)") + ", " + getViewCalls
+					+ " getView calls, " + layoutPasses + " layouts, "
+					+ switches + " switches, " + allocations
+					+ " allocations (" + allocatedBytes + " bytes), " + frames
+					+ " frames (" + getSimulatedMillis() + " ms), frame work "
+					+ (frames > 0 ? totalFrameMicros / frames : 0)
+					+ " us mean, " + maxFrameMicros + " us max";
+		}
+	}
+
+	private final ViewFlow mFlow;
+	private final int mWidth;
+	private final int mHeight;
+	private final Canvas mCanvas;
+	private long mTime = 1000;
+
+	private final SettleScroller.Clock mClock = new SettleScroller.Clock() {
+
+		@Override
+		public long now() {
+			return mTime;
+		}
+	};
+
+	/**
+	 * Sets up a {@link ViewFlow} for replays and lays it out. The adapter
+	 * should be set already. Metrics are enabled and the view buffer is
+	 * filled synchronously.
+	 */
+	GestureReplay(ViewFlow flow, int width, int height) {
+		mFlow = flow;
+		mWidth = width;
+		mHeight = height;
+		mCanvas = new Canvas(Bitmap.createBitmap(width, height,
+				Bitmap.Config.RGB_565));
+		flow.setSettleClock(mClock);
+		flow.setIncrementalFill(false);
+		flow.setMetricsEnabled(true);
+		frame();
+	}
+
+	ViewFlow getViewFlow() {
+		return mFlow;
+	}
+
+	/**
+	 * @return the simulated time in milliseconds
+	 */
+	long now() {
+		return mTime;
+	}
+
+	/**
+	 * Advances the simulated time.
+	 */
+	void advance(long millis) {
+		mTime += millis;
+	}
+
+	/**
+	 * Runs a frame at the current simulated time.
+	 */
+	void frame() {
+		if (mFlow.isLayoutRequested()) {
+			mFlow.measure(MeasureSpec.makeMeasureSpec(mWidth,
+					MeasureSpec.EXACTLY), MeasureSpec.makeMeasureSpec(mHeight,
+					MeasureSpec.EXACTLY));
+			mFlow.layout(0, 0, mWidth, mHeight);
+		}
+		mFlow.computeScroll();
+		mFlow.draw(mCanvas);
+	}
+
+	/**
+	 * Creates the events of a gesture starting at the given simulated time.
+	 * The caller recycles them.
+	 */
+	MotionEvent[] obtainEvents(Gesture gesture, long start) {
+		final MotionEvent[] events = new MotionEvent[gesture.size()];
+		long downTime = start;
+		for (int i = 0; i < events.length; i++) {
+			final long time = start + gesture.getTime(i);
+			if (gesture.getAction(i) == MotionEvent.ACTION_DOWN)
+				downTime = time;
+			events[i] = MotionEvent.obtain(downTime, time,
+					gesture.getAction(i), gesture.getX(i) * mWidth,
+					mHeight / 2f, 0);
+		}
+		return events;
+	}
+
+	/**
+	 * Dispatches events at their time, running a frame every
+	 * {@link #FRAME_MILLIS}, until the last event has been dispatched and the
+	 * {@link ViewFlow} has settled. Does not allocate by itself.
+	 *
+	 * @param events
+	 *            events obtained by {@link #obtainEvents(Gesture, long)}
+	 * @param result
+	 *            receives the number of frames and their measured work
+	 */
+	void play(MotionEvent[] events, Result result) {
+		int next = 0;
+		int settleFrames = 0;
+		while (next < events.length
+				|| (settleFrames < MAX_SETTLE_FRAMES && (mFlow.isSettling() || mFlow
+						.isLayoutRequested()))) {
+			mTime += FRAME_MILLIS;
+			final long start = System.nanoTime();
+			for (; next < events.length && events[next].getEventTime() <= mTime; next++)
+				mFlow.dispatchTouchEvent(events[next]);
+			frame();
+			final long micros = (System.nanoTime() - start) / 1000;
+			result.totalFrameMicros += micros;
+			result.maxFrameMicros = Math.max(result.maxFrameMicros, micros);
+			result.frames++;
+			if (next == events.length)
+				settleFrames++;
+		}
+	}
+
+	/**
+	 * Replays a gesture from the current simulated time, then lets the
+	 * {@link ViewFlow} settle.
+	 */
+	Result replay(Gesture gesture) {
+		final MotionEvent[] events = obtainEvents(gesture, mTime);
+		final FlowMetrics metrics = mFlow.getMetrics();
+		final Result result = new Result();
+		result.gesture = gesture.getName();
+		metrics.reset();
+
+		AllocationCounter.start();
+		play(events, result);
+		result.allocations = AllocationCounter.getCount();
+		result.allocatedBytes = AllocationCounter.getSize();
+		AllocationCounter.stop();
+
+		for (int i = 0; i < events.length; i++)
+			events[i].recycle();
+		result.settled = !mFlow.isSettling();
+		result.position = mFlow.getSelectedItemPosition();
+		result.scrollX = mFlow.getScrollX();
+		result.getViewCalls = metrics.getGetViewCount();
+		result.layoutPasses = metrics.getLayoutCount();
+		result.switches = metrics.getSwitchCount();
+		return result;
+	}
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright (C) 2011 Patrik Åkerfeldt
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.taptwo.android.widget;
+
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+/**
+ * Replays the canonical gestures and logs their cost, to be compared between
+ * versions with {@code adb logcat -s GestureReplay}.
+ */
+public class GestureReplayTest extends AndroidTestCase {
+
+	private static final String TAG = "GestureReplay";
+	private static final int WIDTH = 480;
+	private static final int HEIGHT = 800;
+	private static final int COUNT = 100;
+	private static final int START = 50;
+
+	private GestureReplay newReplay() {
+		final ViewFlow flow = new ViewFlow(getContext());
+		flow.setAdapter(new TestAdapter(getContext(), COUNT), START);
+		return new GestureReplay(flow, WIDTH, HEIGHT);
+	}
+
+	private GestureReplay.Result replay(Gesture gesture) {
+		final GestureReplay.Result result = newReplay().replay(gesture);
+		Log.i(TAG, result.toString());
+		assertTrue(gesture + " did not settle", result.settled);
+		assertEquals(gesture + " did not settle on a view", 0, result.scrollX
+				% WIDTH);
+		return result;
+	}
+
+	public void testSlowDragSwitchesToNextView() {
+		assertEquals(START + 1, replay(Gesture.slowDrag()).position);
+	}
+
+	public void testFastFlingSwitchesToNextView() {
+		final GestureReplay.Result result = replay(Gesture.fastFling());
+		assertEquals(START + 1, result.position);
+		assertEquals(1, result.switches);
+	}
+
+	public void testBackAndForthStaysNearStart() {
+		final int position = replay(Gesture.backAndForth()).position;
+		assertTrue("position " + position, Math.abs(position - START) <= 1);
+	}
+
+	public void testInterruptedFlingSettles() {
+		final int position = replay(Gesture.interruptedFling()).position;
+		assertTrue("position " + position, position == START
+				|| position == START + 1);
+	}
+
+	public void testReplaysAreDeterministic() {
+		final Gesture[] gestures = Gesture.canonical();
+		for (int i = 0; i < gestures.length; i++) {
+			final GestureReplay.Result first = replay(gestures[i]);
+			final GestureReplay.Result second = replay(gestures[i]);
+			assertTrue(first + " / " + second, first.sameBehavior(second));
+		}
+	}
+
+	public void testGesturesReplayInSequence() {
+		final GestureReplay replay = newReplay();
+		final Gesture[] gestures = Gesture.canonical();
+		for (int i = 0; i < gestures.length; i++) {
+			final GestureReplay.Result result = replay.replay(gestures[i]);
+			Log.i(TAG, result.toString());
+			assertTrue(gestures[i] + " did not settle", result.settled);
+		}
+	}
+}
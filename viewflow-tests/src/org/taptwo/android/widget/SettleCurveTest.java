@@ -0,0 +1,83 @@
+/*
+ * Copyright (C) 2011 Patrik Åkerfeldt
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.taptwo.android.widget;
+
+import junit.framework.TestCase;
+
+/**
+ * Checks that the settle curves move the view into place monotonically and
+ * without stopping dead, whatever the release velocity.
+ */
+public class SettleCurveTest extends TestCase {
+
+	private static final int DISTANCE = 480;
+	private static final float FREQUENCY = 28f;
+
+	/**
+	 * Steps through a settle one millisecond at a time and fails if the
+	 * fraction moves backwards, jumps into place from more than a pixel away
+	 * or the settle does not complete within the given time.
+	 *
+	 * @return the fraction after the first frame
+	 */
+	private static float assertSettles(SettleCurve curve, float velocity,
+			long maxMillis) {
+		float last = curve.getFraction(0, DISTANCE, velocity);
+		float firstFrame = 0;
+		for (long elapsed = 1; elapsed <= maxMillis; elapsed++) {
+			final float fraction = curve.getFraction(elapsed, DISTANCE,
+					velocity);
+			if (elapsed == GestureReplay.FRAME_MILLIS)
+				firstFrame = fraction;
+			assertTrue("moved back at " + elapsed + " ms: " + last + " to "
+					+ fraction, fraction >= last || last <= 0);
+			if (fraction >= 1) {
+				assertTrue("stopped dead " + (1 - last) * DISTANCE
+						+ " pixels away at " + elapsed + " ms",
+						(1 - last) * DISTANCE <= 1);
+				return firstFrame;
+			}
+			last = fraction;
+		}
+		fail("not settled after " + maxMillis + " ms, at " + last);
+		return firstFrame;
+	}
+
+	public void testSpringWithoutVelocity() {
+		assertSettles(new SettleCurve.Spring(FREQUENCY), 0, 1000);
+	}
+
+	public void testSpringReleasedAway() {
+		assertSettles(new SettleCurve.Spring(FREQUENCY), -2 * FREQUENCY
+				* DISTANCE, 1000);
+	}
+
+	public void testSpringFasterThanFrequency() {
+		// Released at ten times the velocity the spring can take without
+		// overshooting
+		final float velocity = 10 * FREQUENCY * DISTANCE;
+		final float firstFrame = assertSettles(new SettleCurve.Spring(
+				FREQUENCY), velocity, 1000);
+		// It starts like a release at the frequency, not slower
+		assertEquals(new SettleCurve.Spring(FREQUENCY).getFraction(
+				GestureReplay.FRAME_MILLIS, DISTANCE, FREQUENCY * DISTANCE),
+				firstFrame, 1e-6f);
+	}
+
+	public void testDecelerate() {
+		assertSettles(new SettleCurve.Decelerate(), 0, 2 * DISTANCE);
+	}
+}
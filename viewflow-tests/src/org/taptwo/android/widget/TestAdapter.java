@@ -0,0 +1,77 @@
+/*
+ * Copyright (C) 2011 Patrik Åkerfeldt
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.taptwo.android.widget;
+
+import android.content.Context;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.BaseAdapter;
+
+/**
+ * An adapter of plain {@link View}s which reuses its convert views, so that
+ * the cost measured is the one of the {@link ViewFlow} and not of the
+ * adapter. The titles are created up front.
+ */
+class TestAdapter extends BaseAdapter implements TitleProvider {
+
+	private final Context mContext;
+	private final String[] mTitles;
+	private int mCreatedViews;
+
+	TestAdapter(Context context, int count) {
+		mContext = context;
+		mTitles = new String[count];
+		for (int i = 0; i < count; i++) {
+			mTitles[i] = "Item " + i;
+		}
+	}
+
+	@Override
+	public int getCount() {
+		return mTitles.length;
+	}
+
+	@Override
+	public Object getItem(int position) {
+		return mTitles[position];
+	}
+
+	@Override
+	public long getItemId(int position) {
+		return position;
+	}
+
+	@Override
+	public View getView(int position, View convertView, ViewGroup parent) {
+		if (convertView == null) {
+			convertView = new View(mContext);
+			mCreatedViews++;
+		}
+		return convertView;
+	}
+
+	@Override
+	public String getTitle(int position) {
+		return mTitles[position];
+	}
+
+	/**
+	 * @return the number of views created, as opposed to reused
+	 */
+	int getCreatedViewCount() {
+		return mCreatedViews;
+	}
+}
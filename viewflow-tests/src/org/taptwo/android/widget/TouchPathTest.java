@@ -0,0 +1,163 @@
+/*
+ * Copyright (C) 2011 Patrik Åkerfeldt
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.taptwo.android.widget;
+
+import android.content.Context;
+import android.test.AndroidTestCase;
+import android.util.Log;
+import android.view.MotionEvent;
+import android.view.View;
+import android.view.ViewGroup;
+
+/**
+ * Replays gestures over children which take the touch, so that the
+ * {@link ViewFlow} only gets a gesture by intercepting it, and over children
+ * which keep the gesture from the {@link ViewFlow}.
+ */
+public class TouchPathTest extends AndroidTestCase {
+
+	private static final String TAG = "GestureReplay";
+	private static final int WIDTH = 480;
+	private static final int HEIGHT = 800;
+	private static final int COUNT = 100;
+	private static final int START = 50;
+
+	/**
+	 * A child which consumes the touch, like a button. When disallowing, it
+	 * keeps the whole gesture from its parents as soon as it is touched,
+	 * like a horizontally scrolling list.
+	 */
+	private static class TouchChild extends View {
+		private final ChildAdapter mAdapter;
+		int downs;
+		int cancels;
+
+		TouchChild(Context context, ChildAdapter adapter) {
+			super(context);
+			mAdapter = adapter;
+		}
+
+		@Override
+		public boolean onTouchEvent(MotionEvent event) {
+			if (event.getAction() == MotionEvent.ACTION_DOWN) {
+				downs++;
+				if (mAdapter.disallowing)
+					getParent().requestDisallowInterceptTouchEvent(true);
+			} else if (event.getAction() == MotionEvent.ACTION_CANCEL) {
+				cancels++;
+			}
+			return true;
+		}
+	}
+
+	private static class ChildAdapter extends TestAdapter {
+		final TouchChild[] children = new TouchChild[COUNT];
+		boolean disallowing;
+
+		ChildAdapter(Context context) {
+			super(context, COUNT);
+		}
+
+		@Override
+		public View getView(int position, View convertView, ViewGroup parent) {
+			final TouchChild child = convertView != null ? (TouchChild) convertView
+					: new TouchChild(parent.getContext(), this);
+			children[position] = child;
+			return child;
+		}
+	}
+
+	private GestureReplay newReplay(TestAdapter adapter) {
+		final ViewFlow flow = new ViewFlow(getContext());
+		flow.setAdapter(adapter, START);
+		return new GestureReplay(flow, WIDTH, HEIGHT);
+	}
+
+	private static GestureReplay.Result replay(GestureReplay replay,
+			Gesture gesture) {
+		final GestureReplay.Result result = replay.replay(gesture);
+		Log.i(TAG, result.toString());
+		assertTrue(gesture + " did not settle", result.settled);
+		assertEquals(gesture + " did not settle on a view", 0, result.scrollX
+				% WIDTH);
+		return result;
+	}
+
+	public void testFlingOverPlainChildren() {
+		// No child takes the touch, the flow gets the gesture itself
+		assertEquals(START + 1, replay(newReplay(new TestAdapter(getContext(),
+				COUNT)), Gesture.fastFling()).position);
+	}
+
+	public void testFlingOverClickableChildren() {
+		final ChildAdapter adapter = new ChildAdapter(getContext());
+		assertEquals(START + 1, replay(newReplay(adapter), Gesture.fastFling())
+				.position);
+		// The flow intercepted the drag from the child it started on
+		assertEquals(1, adapter.children[START].downs);
+		assertEquals(1, adapter.children[START].cancels);
+	}
+
+	public void testSlowDragOverClickableChildren() {
+		final ChildAdapter adapter = new ChildAdapter(getContext());
+		assertEquals(START + 1, replay(newReplay(adapter), Gesture.slowDrag())
+				.position);
+		assertEquals(1, adapter.children[START].cancels);
+	}
+
+	public void testInterruptedFlingOverClickableChildren() {
+		final int position = replay(newReplay(new ChildAdapter(getContext())),
+				Gesture.interruptedFling()).position;
+		assertTrue("position " + position, position == START
+				|| position == START + 1);
+	}
+
+	public void testDisallowingChildKeepsTouch() {
+		final ChildAdapter adapter = new ChildAdapter(getContext());
+		adapter.disallowing = true;
+		assertEquals(START, replay(newReplay(adapter), Gesture.fastFling())
+				.position);
+		assertEquals(1, adapter.children[START].downs);
+		assertEquals(0, adapter.children[START].cancels);
+	}
+
+	public void testDisallowingChildStopsSettle() {
+		final ChildAdapter adapter = new ChildAdapter(getContext());
+		final GestureReplay replay = newReplay(adapter);
+		final ViewFlow flow = replay.getViewFlow();
+
+		// A fling intercepted from a child, followed by a frame of its settle
+		final MotionEvent[] fling = replay.obtainEvents(Gesture.fastFling(),
+				replay.now());
+		for (int i = 0; i < fling.length; i++) {
+			replay.advance(Gesture.SAMPLE_MILLIS);
+			flow.dispatchTouchEvent(fling[i]);
+			fling[i].recycle();
+		}
+		replay.advance(GestureReplay.FRAME_MILLIS);
+		replay.frame();
+		assertTrue(flow.isSettling());
+		assertTrue(flow.getScrollX() % WIDTH != 0);
+
+		// A touch stops the settle between two views, and the child under it
+		// keeps the rest of the gesture from the flow
+		adapter.disallowing = true;
+		final int position = replay(replay,
+				new Gesture("press while settling").press(0, 200, 0.5f)).position;
+		assertTrue("position " + position, position == START
+				|| position == START + 1);
+	}
+}
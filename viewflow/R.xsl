@@ -0,0 +1,51 @@
+<?xml version="1.0" encoding="UTF-8"?>
+<!--
+    Generates the R class of the library from res/values/attrs.xml, for the
+    builds which compile the library without the Android SDK, like the JVM
+    builds of viewflow-tests and viewflow-benchmarks. Attribute ids are
+    assigned in the order of declaration, the way aapt does for a library.
+-->
+<xsl:stylesheet version="1.0" xmlns:xsl="http://www.w3.org/1999/XSL/Transform">
+    <xsl:output method="text" encoding="UTF-8"/>
+
+    <!-- The first id aapt assigns to an attribute of an application -->
+    <xsl:variable name="firstAttr" select="2130771968"/>
+
+    <xsl:template match="/resources">
+        <xsl:text>/* Generated from res/values/attrs.xml by R.xsl, do not edit. */&#10;</xsl:text>
+        <xsl:text>package org.taptwo.android.widget.viewflow;&#10;&#10;</xsl:text>
+        <xsl:text>public final class R {&#10;</xsl:text>
+        <xsl:text>&#9;public static final class attr {&#10;</xsl:text>
+        <xsl:for-each select="declare-styleable/attr">
+            <xsl:text>&#9;&#9;public static final int </xsl:text>
+            <xsl:value-of select="@name"/>
+            <xsl:text> = </xsl:text>
+            <xsl:value-of select="$firstAttr + count(preceding::attr)"/>
+            <xsl:text>;&#10;</xsl:text>
+        </xsl:for-each>
+        <xsl:text>&#9;}&#10;&#10;</xsl:text>
+        <xsl:text>&#9;public static final class styleable {&#10;</xsl:text>
+        <xsl:for-each select="declare-styleable">
+            <xsl:variable name="styleable" select="@name"/>
+            <xsl:text>&#9;&#9;public static final int[] </xsl:text>
+            <xsl:value-of select="$styleable"/>
+            <xsl:text> = {</xsl:text>
+            <xsl:for-each select="attr">
+                <xsl:if test="position() > 1">
+                    <xsl:text>,</xsl:text>
+                </xsl:if>
+                <xsl:text> </xsl:text>
+                <xsl:value-of select="$firstAttr + count(preceding::attr)"/>
+            </xsl:for-each>
+            <xsl:text> };&#10;</xsl:text>
+            <xsl:for-each select="attr">
+                <xsl:text>&#9;&#9;public static final int </xsl:text>
+                <xsl:value-of select="concat($styleable, '_', @name)"/>
+                <xsl:text> = </xsl:text>
+                <xsl:value-of select="position() - 1"/>
+                <xsl:text>;&#10;</xsl:text>
+            </xsl:for-each>
+        </xsl:for-each>
+        <xsl:text>&#9;}&#10;}&#10;</xsl:text>
+    </xsl:template>
+</xsl:stylesheet>
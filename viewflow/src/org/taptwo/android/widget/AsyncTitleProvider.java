@@ -0,0 +1,48 @@
+/*
+ * Copyright (C) 2011 Patrik Åkerfeldt
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.taptwo.android.widget;
+
+/**
+ * A {@link TitleProvider} whose titles are slow to get, for example because
+ * they are read from disk or a database.<br/>
+ * When set on a {@link TitleFlowIndicator}, {@link #getTitle(int)} is called
+ * on a background thread for the positions near the screen, and the
+ * placeholder returned by {@link #getPlaceholder(int)} is drawn until the
+ * title is available. Requests for positions which have scrolled away are
+ * cancelled. A title which fails to load is requested again the next time it
+ * is drawn. After a data set change, the previous titles are drawn until the
+ * new ones are loaded.
+ */
+public interface AsyncTitleProvider extends TitleProvider {
+
+	/**
+	 * Returns the title of the view at position. This method is called on a
+	 * background thread and must not touch any views.
+	 *
+	 * @param position
+	 * @return
+	 */
+	public String getTitle(int position);
+
+	/**
+	 * Returns the text drawn while the title of the view at position is
+	 * loading. This method is called on the UI thread and should be cheap.
+	 *
+	 * @param position
+	 * @return
+	 */
+	public String getPlaceholder(int position);
+}
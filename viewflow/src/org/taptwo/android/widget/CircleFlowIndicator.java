@@ -15,6 +15,7 @@
  */
 package org.taptwo.android.widget;
 
+import org.taptwo.android.widget.ViewFlow.ViewScrollListener;
 import org.taptwo.android.widget.viewflow.R;
 
 import android.content.Context;
@@ -22,7 +23,7 @@ import android.content.res.TypedArray;
 import android.graphics.Canvas;
 import android.graphics.Paint;
 import android.graphics.Paint.Style;
-import android.os.AsyncTask;
+import android.os.SystemClock;
 import android.util.AttributeSet;
 import android.view.View;
 import android.view.animation.Animation;
@@ -53,18 +54,35 @@ import android.view.animation.Animation.AnimationListener;
  * </ul>
  */
 public class CircleFlowIndicator extends View implements FlowIndicator,
-		AnimationListener {
+		ViewScrollListener, AnimationListener {
 	private static final int STYLE_STROKE = 0;
 	private static final int STYLE_FILL = 1;
 
 	private float radius = 4;
 	private int fadeOutTime = 0;
+	private long fadeOutDeadline;
+	private boolean fadeOutPending;
 	private final Paint mPaintInactive = new Paint(Paint.ANTI_ALIAS_FLAG);
 	private final Paint mPaintActive = new Paint(Paint.ANTI_ALIAS_FLAG);
 	private ViewFlow viewFlow;
-	private int currentScroll = 0;
-	private int flowWidth = 0;
-	private FadeTimer timer;
+	private float scrollPosition = 0;
+	private final Runnable fadeOut = new Runnable() {
+
+		@Override
+		public void run() {
+			// The deadline moves on every scroll, wait until it has passed
+			final long delay = fadeOutDeadline - SystemClock.uptimeMillis();
+			if (delay > 0) {
+				postDelayed(this, delay);
+				return;
+			}
+			fadeOutPending = false;
+			animation = AnimationUtils.loadAnimation(getContext(),
+					android.R.anim.fade_out);
+			animation.setAnimationListener(animationListener);
+			startAnimation(animation);
+		}
+	};
 	public AnimationListener animationListener = this;
 	private Animation animation;
 	private boolean mCentered = false;
@@ -171,12 +189,8 @@ public class CircleFlowIndicator extends View implements FlowIndicator,
 					+ (iLoop * circleSeparation) + centeringOffset,
 					getPaddingTop() + radius, radius, mPaintInactive);
 		}
-		float cx = 0;
-		if (flowWidth != 0) {
-			// Draw the filled circle according to the current scroll
-			cx = (currentScroll * (2 * radius + radius)) / flowWidth;
-		}
-		// The flow width has been upadated yet. Draw the default position
+		// Draw the filled circle according to the current scroll
+		float cx = scrollPosition * circleSeparation;
 		canvas.drawCircle(leftPadding + radius + cx+centeringOffset, getPaddingTop()
 				+ radius, radius, mPaintActive);
 	}
@@ -203,7 +217,7 @@ public class CircleFlowIndicator extends View implements FlowIndicator,
 	public void setViewFlow(ViewFlow view) {
 		resetTimer();
 		viewFlow = view;
-		flowWidth = viewFlow.getWidth();
+		scrollPosition = viewFlow.getSelectedItemPosition();
 		invalidate();
 	}
 
@@ -215,11 +229,27 @@ public class CircleFlowIndicator extends View implements FlowIndicator,
 	 */
 	@Override
 	public void onScrolled(int h, int v, int oldh, int oldv) {
+		final int flowWidth = viewFlow.getWidth();
+		if (flowWidth != 0)
+			onScrolled(h / flowWidth, (h % flowWidth) / (float) flowWidth);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * org.taptwo.android.widget.ViewFlow.ViewScrollListener#onScrolled(int,
+	 * float)
+	 */
+	@Override
+	public void onScrolled(int position, float offset) {
 		setVisibility(View.VISIBLE);
 		resetTimer();
-		currentScroll = h;
-		flowWidth = viewFlow.getWidth();
-		invalidate();
+		final float newPosition = position + offset;
+		if (newPosition != scrollPosition) {
+			scrollPosition = newPosition;
+			invalidate();
+		}
 	}
 
 	/*
@@ -294,6 +324,17 @@ public class CircleFlowIndicator extends View implements FlowIndicator,
 		return result;
 	}
 
+	/**
+	 * Sets the time until the indicator fades out after the last scroll
+	 * 
+	 * @param millis
+	 *            the time in milliseconds, 0 to never fade out
+	 */
+	public void setFadeOutTime(int millis) {
+		fadeOutTime = millis;
+		resetTimer();
+	}
+
 	/**
 	 * Sets the fill color
 	 * 
@@ -317,68 +358,20 @@ public class CircleFlowIndicator extends View implements FlowIndicator,
 	}
 
 	/**
-	 * Resets the fade out timer to 0. Creating a new one if needed
+	 * Restarts the fade out countdown. Only the deadline is moved while a
+	 * fade is pending, so scrolling does not post a message every frame.
 	 */
 	private void resetTimer() {
 		// Only set the timer if we have a timeout of at least 1 millisecond
 		if (fadeOutTime > 0) {
-			// Check if we need to create a new timer
-			if (timer == null || timer._run == false) {
-				// Create and start a new timer
-				timer = new FadeTimer();
-				timer.execute();
-			} else {
-				// Reset the current tiemr to 0
-				timer.resetTimer();
+			fadeOutDeadline = SystemClock.uptimeMillis() + fadeOutTime;
+			if (!fadeOutPending) {
+				fadeOutPending = true;
+				postDelayed(fadeOut, fadeOutTime);
 			}
 		}
 	}
 
-	/**
-	 * Counts from 0 to the fade out time and animates the view away when
-	 * reached
-	 */
-	private class FadeTimer extends AsyncTask<Void, Void, Void> {
-		// The current count
-		private int timer = 0;
-		// If we are inside the timing loop
-		private boolean _run = true;
-
-		public void resetTimer() {
-			timer = 0;
-		}
-
-		@Override
-		protected Void doInBackground(Void... arg0) {
-			while (_run) {
-				try {
-					// Wait for a millisecond
-					Thread.sleep(1);
-					// Increment the timer
-					timer++;
-
-					// Check if we've reached the fade out time
-					if (timer == fadeOutTime) {
-						// Stop running
-						_run = false;
-					}
-				} catch (InterruptedException e) {
-					// TODO Auto-generated catch block
-					e.printStackTrace();
-				}
-			}
-			return null;
-		}
-
-		@Override
-		protected void onPostExecute(Void result) {
-			animation = AnimationUtils.loadAnimation(getContext(),
-					android.R.anim.fade_out);
-			animation.setAnimationListener(animationListener);
-			startAnimation(animation);
-		}
-	}
-
 	@Override
 	public void onAnimationEnd(Animation animation) {
 		setVisibility(View.GONE);
@@ -391,4 +384,4 @@ public class CircleFlowIndicator extends View implements FlowIndicator,
 	@Override
 	public void onAnimationStart(Animation animation) {
 	}
-}
\ No newline at end of file
+}
\ No newline at end of file
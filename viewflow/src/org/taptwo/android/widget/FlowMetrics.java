@@ -0,0 +1,300 @@
+/*
+ * Copyright (C) 2011 Patrik Åkerfeldt
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.taptwo.android.widget;
+
+import java.io.PrintWriter;
+import java.lang.reflect.Method;
+
+/**
+ * Counters and histograms collected by a {@link ViewFlow} while metrics are
+ * enabled with {@link ViewFlow#setMetricsEnabled(boolean)}. While enabled,
+ * the ViewFlow also marks its bind, layout and switch work as
+ * {@code android.os.Trace} sections on devices supporting it (API level 18).
+ */
+public class FlowMetrics {
+
+	private static final long[] TIME_BUCKETS = { 500, 1000, 2000, 4000, 8000,
+			16000, 32000, 64000 };
+	private static final long[] COUNT_BUCKETS = { 0, 1, 2, 3, 4 };
+
+	private static Method sBeginSection;
+	private static Method sEndSection;
+	private static boolean sTraceChecked;
+	private static final Object[] NO_ARGS = new Object[0];
+
+	private final Object[] mSectionArgs = new Object[1];
+	/* Bit n is set if the section at nesting depth n was opened */
+	private long mOpenSections;
+	private int mSectionDepth;
+
+	private final Histogram mGetViewTimes = new Histogram(TIME_BUCKETS);
+	private final Histogram mLayoutsPerSwitch = new Histogram(COUNT_BUCKETS);
+	private int mGetViewCalls;
+	private int mFullResets;
+	private int mSwitches;
+	private int mLayouts;
+	private int mLayoutsSinceSwitch;
+	private int mSlowGetViews;
+
+	FlowMetrics() {
+		if (!sTraceChecked) {
+			sTraceChecked = true;
+			try {
+				final Class<?> trace = Class.forName("android.os.Trace");
+				sBeginSection = trace.getMethod("beginSection", String.class);
+				sEndSection = trace.getMethod("endSection");
+			} catch (Exception e) {
+				// Not available before Jelly Bean MR2
+			}
+		}
+	}
+
+	/**
+	 * @return the number of times the adapter was asked for a view
+	 */
+	public int getGetViewCount() {
+		return mGetViewCalls;
+	}
+
+	/**
+	 * @return the time spent in the adapter's {@code getView} in
+	 *         microseconds
+	 */
+	public Histogram getGetViewTimes() {
+		return mGetViewTimes;
+	}
+
+	/**
+	 * @return the number of calls to {@code getView} which exceeded the
+	 *         budget set with
+	 *         {@link ViewFlow#setSlowGetViewListener(ViewFlow.SlowGetViewListener, long)}
+	 */
+	public int getSlowGetViewCount() {
+		return mSlowGetViews;
+	}
+
+	/**
+	 * @return the number of times the view buffer was filled from scratch
+	 */
+	public int getFullResetCount() {
+		return mFullResets;
+	}
+
+	/**
+	 * @return the number of view switches
+	 */
+	public int getSwitchCount() {
+		return mSwitches;
+	}
+
+	/**
+	 * @return the number of layout passes of the ViewFlow
+	 */
+	public int getLayoutCount() {
+		return mLayouts;
+	}
+
+	/**
+	 * @return the number of layout passes between two view switches
+	 */
+	public Histogram getLayoutsPerSwitch() {
+		return mLayoutsPerSwitch;
+	}
+
+	/**
+	 * Clears all counters and histograms.
+	 */
+	public void reset() {
+		mGetViewTimes.reset();
+		mLayoutsPerSwitch.reset();
+		mGetViewCalls = 0;
+		mFullResets = 0;
+		mSwitches = 0;
+		mLayouts = 0;
+		mLayoutsSinceSwitch = 0;
+		mSlowGetViews = 0;
+	}
+
+	void onGetView(long micros, boolean slow) {
+		mGetViewCalls++;
+		mGetViewTimes.add(micros);
+		if (slow)
+			mSlowGetViews++;
+	}
+
+	void onFullReset() {
+		mFullResets++;
+	}
+
+	void onLayout() {
+		mLayouts++;
+		mLayoutsSinceSwitch++;
+	}
+
+	void onSwitch() {
+		mSwitches++;
+		mLayoutsPerSwitch.add(mLayoutsSinceSwitch);
+		mLayoutsSinceSwitch = 0;
+	}
+
+	/**
+	 * Opens a trace section. Every call must be matched by a call to
+	 * {@link #endSection()}, which only closes the section if it was opened.
+	 */
+	void beginSection(String name) {
+		final long bit = mSectionDepth < 64 ? 1L << mSectionDepth : 0;
+		mSectionDepth++;
+		mOpenSections &= ~bit;
+		if (sBeginSection != null && bit != 0) {
+			try {
+				mSectionArgs[0] = name;
+				sBeginSection.invoke(null, mSectionArgs);
+				mOpenSections |= bit;
+			} catch (Exception e) {
+				sBeginSection = null;
+			}
+		}
+	}
+
+	void endSection() {
+		if (mSectionDepth == 0)
+			return;
+		mSectionDepth--;
+		final long bit = mSectionDepth < 64 ? 1L << mSectionDepth : 0;
+		if ((mOpenSections & bit) == 0)
+			return;
+		mOpenSections &= ~bit;
+		if (sEndSection != null) {
+			try {
+				sEndSection.invoke(null, NO_ARGS);
+			} catch (Exception e) {
+				// Sections which can not be closed are not opened anymore
+				sEndSection = null;
+				sBeginSection = null;
+			}
+		}
+	}
+
+	void dump(PrintWriter pw, String prefix) {
+		pw.print(prefix);
+		pw.print("getView: ");
+		pw.print(mGetViewCalls);
+		pw.print(" calls, ");
+		pw.print(mSlowGetViews);
+		pw.println(" slow");
+		mGetViewTimes.dump(pw, prefix + "  ", "us");
+		pw.print(prefix);
+		pw.print("full resets: ");
+		pw.print(mFullResets);
+		pw.print(", switches: ");
+		pw.print(mSwitches);
+		pw.print(", layouts: ");
+		pw.println(mLayouts);
+		pw.print(prefix);
+		pw.println("layouts per switch:");
+		mLayoutsPerSwitch.dump(pw, prefix + "  ", "");
+	}
+
+	/**
+	 * A histogram with fixed buckets. Adding a value does not allocate.
+	 */
+	public static class Histogram {
+		private final long[] mBounds;
+		private final int[] mCounts;
+		private int mCount;
+		private long mSum;
+		private long mMax;
+
+		Histogram(long[] bounds) {
+			mBounds = bounds;
+			mCounts = new int[bounds.length + 1];
+		}
+
+		void add(long value) {
+			int bucket = 0;
+			while (bucket < mBounds.length && value > mBounds[bucket])
+				bucket++;
+			mCounts[bucket]++;
+			mCount++;
+			mSum += value;
+			mMax = Math.max(mMax, value);
+		}
+
+		void reset() {
+			for (int i = 0; i < mCounts.length; i++)
+				mCounts[i] = 0;
+			mCount = 0;
+			mSum = 0;
+			mMax = 0;
+		}
+
+		/**
+		 * @return the number of values added
+		 */
+		public int getCount() {
+			return mCount;
+		}
+
+		public long getMax() {
+			return mMax;
+		}
+
+		public long getMean() {
+			return mCount == 0 ? 0 : mSum / mCount;
+		}
+
+		/**
+		 * @return the number of buckets. The last bucket is unbounded.
+		 */
+		public int getBucketCount() {
+			return mCounts.length;
+		}
+
+		/**
+		 * @return the inclusive upper bound of the bucket, or
+		 *         {@link Long#MAX_VALUE} for the last bucket
+		 */
+		public long getBucketBound(int bucket) {
+			return bucket < mBounds.length ? mBounds[bucket] : Long.MAX_VALUE;
+		}
+
+		/**
+		 * @return the number of values in the bucket
+		 */
+		public int getBucketCount(int bucket) {
+			return mCounts[bucket];
+		}
+
+		void dump(PrintWriter pw, String prefix, String unit) {
+			pw.print(prefix);
+			pw.print("count: ");
+			pw.print(mCount);
+			pw.print(", mean: ");
+			pw.print(getMean());
+			pw.print(unit);
+			pw.print(", max: ");
+			pw.print(mMax);
+			pw.println(unit);
+			for (int i = 0; i < mCounts.length; i++) {
+				pw.print(prefix);
+				pw.print(i < mBounds.length ? "<= " + mBounds[i] + unit : "> "
+						+ mBounds[mBounds.length - 1] + unit);
+				pw.print(": ");
+				pw.println(mCounts[i]);
+			}
+		}
+	}
+}
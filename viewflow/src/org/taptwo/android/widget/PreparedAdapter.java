@@ -0,0 +1,60 @@
+/*
+ * Copyright (C) 2011 Patrik Åkerfeldt
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.taptwo.android.widget;
+
+import android.view.View;
+import android.widget.Adapter;
+
+/**
+ * An {@link Adapter} which binds its views to data in two phases when used
+ * with a {@link ViewFlow}.<br/>
+ * {@link #getView(int, View, android.view.ViewGroup)} is still called on the
+ * UI thread, but should only create or recycle the view and show a
+ * placeholder. The data for the view is then prepared on a background thread
+ * by {@link #prepare(int)}, and applied to the view on the UI thread by
+ * {@link #bind(View, int, Object)}. Preparation is cancelled when the view
+ * leaves the view buffer before it is bound.
+ *
+ * @param <T>
+ *            the type of the prepared data
+ */
+public interface PreparedAdapter<T> extends Adapter {
+
+	/**
+	 * Prepares the data for the view at position. This method is called on a
+	 * background thread and must not touch any views. If it throws, it is
+	 * called again on the UI thread before the view is bound, and a second
+	 * failure is thrown there.
+	 *
+	 * @param position
+	 *            the position in the adapter
+	 * @return the prepared data, passed to {@link #bind(View, int, Object)}
+	 */
+	public T prepare(int position);
+
+	/**
+	 * Applies the prepared data to the view. This method is called on the UI
+	 * thread and should be cheap.
+	 *
+	 * @param view
+	 *            the view returned by {@code getView} for the position
+	 * @param position
+	 *            the position in the adapter
+	 * @param prepared
+	 *            the data returned by {@link #prepare(int)}
+	 */
+	public void bind(View view, int position, T prepared);
+}
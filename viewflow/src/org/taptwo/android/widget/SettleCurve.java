@@ -0,0 +1,99 @@
+/*
+ * Copyright (C) 2011 Patrik Åkerfeldt
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.taptwo.android.widget;
+
+/**
+ * Describes how a {@link ViewFlow} settles on a view after the user has
+ * released it. A settle starts at the release position and velocity and ends
+ * when the view is in place.
+ */
+public interface SettleCurve {
+
+	/**
+	 * Returns how far a settle has come after the given time.
+	 *
+	 * @param elapsed
+	 *            the time since the settle started in milliseconds
+	 * @param distance
+	 *            the distance to settle in pixels, always positive
+	 * @param velocity
+	 *            the release velocity towards the settle position in pixels
+	 *            per second, negative if released moving away from it
+	 * @return the fraction of the distance travelled, 1 or more when the
+	 *         settle has completed
+	 */
+	float getFraction(long elapsed, int distance, float velocity);
+
+	/**
+	 * A critically damped spring, pulling the view into place from the
+	 * release velocity without overshooting. Release velocities towards the
+	 * settle position are limited to the frequency times the distance per
+	 * second, faster ones would carry the view past its position.
+	 */
+	public static class Spring implements SettleCurve {
+		private static final float DEFAULT_FREQUENCY = 28f;
+
+		private final float mFrequency;
+
+		public Spring() {
+			this(DEFAULT_FREQUENCY);
+		}
+
+		/**
+		 * @param frequency
+		 *            the natural frequency of the spring in radians per
+		 *            second. Higher frequencies settle faster.
+		 */
+		public Spring(float frequency) {
+			mFrequency = frequency;
+		}
+
+		@Override
+		public float getFraction(long elapsed, int distance, float velocity) {
+			if (distance <= 0)
+				return 1;
+			final float t = elapsed / 1000f;
+			// Remaining distance e(t) = (e0 + (v0 + w * e0) * t) * exp(-w * t),
+			// relative to the distance, starting at e0 = -1. It crosses zero
+			// when v0 > w, so v0 is clamped to w.
+			final float v0 = Math.min(velocity / distance, mFrequency);
+			final float remaining = (-1 + (v0 - mFrequency) * t)
+					* (float) Math.exp(-mFrequency * t);
+			// Stop once in place or within half a pixel
+			if (remaining >= 0 || -remaining * distance < 0.5f)
+				return 1;
+			return 1 + remaining;
+		}
+	}
+
+	/**
+	 * A quadratic deceleration, starting at the release velocity. Without a
+	 * velocity, the view settles at two milliseconds per pixel.
+	 */
+	public static class Decelerate implements SettleCurve {
+
+		@Override
+		public float getFraction(long elapsed, int distance, float velocity) {
+			int duration = distance * 2;
+			if (velocity > 0)
+				duration = Math.min(duration, (int) (2000 * distance / velocity));
+			if (elapsed >= duration)
+				return 1;
+			final float t = 1 - elapsed / (float) duration;
+			return 1 - t * t;
+		}
+	}
+}
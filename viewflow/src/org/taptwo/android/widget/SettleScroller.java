@@ -0,0 +1,152 @@
+/*
+ * Copyright (C) 2011 Patrik Åkerfeldt
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.taptwo.android.widget;
+
+import android.view.animation.AnimationUtils;
+
+/**
+ * Animates the horizontal scroll position of a {@link ViewFlow} along a
+ * {@link SettleCurve}. Like a {@link android.widget.Scroller}, it is polled
+ * from {@code computeScroll()}, but the animation can be moved while running
+ * without restarting it, which keeps its velocity when the view buffer is
+ * shifted under it.
+ */
+class SettleScroller {
+
+	/**
+	 * The time source of the animation.
+	 */
+	interface Clock {
+		/**
+		 * @return the current time in milliseconds
+		 */
+		long now();
+	}
+
+	/**
+	 * The animation time of the UI thread, shared by all animations of a
+	 * frame.
+	 */
+	static final Clock ANIMATION_CLOCK = new Clock() {
+
+		@Override
+		public long now() {
+			return AnimationUtils.currentAnimationTimeMillis();
+		}
+	};
+
+	private SettleCurve mCurve;
+	private Clock mClock = ANIMATION_CLOCK;
+	private int mStartX;
+	private int mFinalX;
+	private int mCurrX;
+	private float mVelocity;
+	private long mStartTime;
+	private boolean mAnimated;
+	private boolean mFinished = true;
+
+	SettleScroller(SettleCurve curve) {
+		mCurve = curve;
+	}
+
+	void setCurve(SettleCurve curve) {
+		mCurve = curve;
+	}
+
+	/**
+	 * Replaces the time source, so that a settle can be replayed
+	 * deterministically.
+	 */
+	void setClock(Clock clock) {
+		mClock = clock != null ? clock : ANIMATION_CLOCK;
+	}
+
+	/**
+	 * Starts settling from startX to finalX.
+	 *
+	 * @param velocity
+	 *            the initial velocity of the scroll position in pixels per
+	 *            second
+	 */
+	void settle(int startX, int finalX, float velocity) {
+		mStartX = startX;
+		mFinalX = finalX;
+		mCurrX = startX;
+		mVelocity = finalX >= startX ? velocity : -velocity;
+		mStartTime = mClock.now();
+		mAnimated = true;
+		mFinished = false;
+	}
+
+	/**
+	 * Moves to x on the next call to {@link #computeScrollOffset()}.
+	 */
+	void jumpTo(int x) {
+		mStartX = mCurrX;
+		mFinalX = x;
+		mAnimated = false;
+		mFinished = false;
+	}
+
+	/**
+	 * Moves a running animation, including its start and final positions, by
+	 * dx pixels. The progress of the animation is not affected.
+	 */
+	void offset(int dx) {
+		mStartX += dx;
+		mFinalX += dx;
+		mCurrX += dx;
+	}
+
+	/**
+	 * Updates the current position.
+	 *
+	 * @return true if the animation was running
+	 */
+	boolean computeScrollOffset() {
+		if (mFinished)
+			return false;
+
+		final int distance = mFinalX - mStartX;
+		float fraction = 1;
+		if (mAnimated)
+			fraction = mCurve.getFraction(mClock.now() - mStartTime,
+					Math.abs(distance), mVelocity);
+		if (fraction >= 1) {
+			mCurrX = mFinalX;
+			mFinished = true;
+		} else {
+			mCurrX = mStartX + Math.round(fraction * distance);
+		}
+		return true;
+	}
+
+	void forceFinished(boolean finished) {
+		mFinished = finished;
+	}
+
+	boolean isFinished() {
+		return mFinished;
+	}
+
+	int getCurrX() {
+		return mCurrX;
+	}
+
+	int getFinalX() {
+		return mFinalX;
+	}
+}
@@ -0,0 +1,133 @@
+/*
+ * Copyright (C) 2011 Patrik Åkerfeldt
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.taptwo.android.widget;
+
+import android.graphics.Bitmap;
+
+/**
+ * Keeps the titles of a {@link TitleFlowIndicator} rendered into bitmaps, by
+ * position and by whether they were rendered as selected. The cache is bounded
+ * by the total size of its bitmaps in bytes; when full, the least recently
+ * used bitmaps are dropped.<br/>
+ * Dropped bitmaps are not recycled, since a hardware accelerated canvas may
+ * still refer to them until the next frame.
+ */
+class TitleBitmapCache {
+	private final int mMaxBytes;
+	private int mBytes;
+	private int mSize;
+	private int[] mPositions = new int[8];
+	private boolean[] mSelected = new boolean[8];
+	private Bitmap[] mBitmaps = new Bitmap[8];
+	private long[] mLastUsed = new long[8];
+	private long mUseCount;
+
+	TitleBitmapCache(int maxBytes) {
+		mMaxBytes = maxBytes;
+	}
+
+	/**
+	 * @return the cached bitmap or null
+	 */
+	Bitmap get(int position, boolean selected) {
+		for (int i = 0; i < mSize; i++) {
+			if (mPositions[i] == position && mSelected[i] == selected) {
+				mLastUsed[i] = ++mUseCount;
+				return mBitmaps[i];
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * @return true if a bitmap of the given size can be cached at all
+	 */
+	boolean fits(int bytes) {
+		return bytes <= mMaxBytes;
+	}
+
+	/**
+	 * Adds a bitmap, dropping the least recently used bitmaps until it fits.
+	 */
+	void put(int position, boolean selected, Bitmap bitmap) {
+		final int bytes = bitmap.getRowBytes() * bitmap.getHeight();
+		while (mSize > 0 && mBytes + bytes > mMaxBytes)
+			evictOldest();
+
+		if (mSize == mBitmaps.length) {
+			final int capacity = mSize * 2;
+			int[] positions = new int[capacity];
+			boolean[] selections = new boolean[capacity];
+			Bitmap[] bitmaps = new Bitmap[capacity];
+			long[] lastUsed = new long[capacity];
+			System.arraycopy(mPositions, 0, positions, 0, mSize);
+			System.arraycopy(mSelected, 0, selections, 0, mSize);
+			System.arraycopy(mBitmaps, 0, bitmaps, 0, mSize);
+			System.arraycopy(mLastUsed, 0, lastUsed, 0, mSize);
+			mPositions = positions;
+			mSelected = selections;
+			mBitmaps = bitmaps;
+			mLastUsed = lastUsed;
+		}
+		mPositions[mSize] = position;
+		mSelected[mSize] = selected;
+		mBitmaps[mSize] = bitmap;
+		mLastUsed[mSize] = ++mUseCount;
+		mSize++;
+		mBytes += bytes;
+	}
+
+	/**
+	 * Drops the bitmaps of a position.
+	 */
+	void remove(int position) {
+		for (int i = mSize - 1; i >= 0; i--) {
+			if (mPositions[i] == position)
+				removeAt(i);
+		}
+	}
+
+	/**
+	 * Drops all bitmaps.
+	 */
+	void clear() {
+		for (int i = 0; i < mSize; i++)
+			mBitmaps[i] = null;
+		mSize = 0;
+		mBytes = 0;
+	}
+
+	private void evictOldest() {
+		int oldest = 0;
+		for (int i = 1; i < mSize; i++) {
+			if (mLastUsed[i] < mLastUsed[oldest])
+				oldest = i;
+		}
+		removeAt(oldest);
+	}
+
+	private void removeAt(int index) {
+		final Bitmap bitmap = mBitmaps[index];
+		mBytes -= bitmap.getRowBytes() * bitmap.getHeight();
+		// Move the last entry into the free slot
+		mSize--;
+		mPositions[index] = mPositions[mSize];
+		mSelected[index] = mSelected[mSize];
+		mBitmaps[index] = mBitmaps[mSize];
+		mLastUsed[index] = mLastUsed[mSize];
+		mBitmaps[mSize] = null;
+	}
+}
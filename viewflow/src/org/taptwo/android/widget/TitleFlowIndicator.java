@@ -16,18 +16,29 @@
 package org.taptwo.android.widget;
 
 import java.util.ArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
 
+import org.taptwo.android.widget.ViewFlow.ViewScrollListener;
 import org.taptwo.android.widget.viewflow.R;
 
 import android.content.Context;
 import android.content.res.TypedArray;
+import android.database.DataSetObserver;
+import android.graphics.Bitmap;
 import android.graphics.Canvas;
 import android.graphics.Paint;
 import android.graphics.Path;
 import android.graphics.Rect;
 import android.graphics.Typeface;
+import android.os.Handler;
+import android.os.Looper;
+import android.text.TextPaint;
+import android.text.TextUtils;
 import android.util.AttributeSet;
+import android.util.Log;
 import android.view.View;
+import android.widget.Adapter;
 import android.widget.TextView;
 
 /**
@@ -37,7 +48,8 @@ import android.widget.TextView;
  * also scrolled.
  * 
  */
-public class TitleFlowIndicator extends TextView implements FlowIndicator {
+public class TitleFlowIndicator extends TextView implements FlowIndicator,
+		ViewScrollListener {
 
 	private static final float TITLE_PADDING = 10.0f;
 	private static final float CLIP_PADDING = 0.0f;
@@ -48,13 +60,75 @@ public class TitleFlowIndicator extends TextView implements FlowIndicator {
 	private static final float FOOTER_LINE_HEIGHT = 4.0f;
 	private static final int FOOTER_COLOR = 0xFFFFC445;
 	private static final float FOOTER_TRIANGLE_HEIGHT = 10;
+	/* Titles further away from the screen are clipped out of it */
+	private static final int TITLE_WINDOW_MARGIN = 3;
+	/* The titles around the scroll position, and the current title */
+	private static final int TITLE_BOUNDS = 2 * TITLE_WINDOW_MARGIN + 2;
+	private static final int TITLE_CACHE_SIZE = 16;
+	private static final String TAG = "TitleFlowIndicator";
+	private static ExecutorService sDefaultTitleExecutor;
 	private ViewFlow viewFlow;
 	private int currentScroll = 0;
 	private TitleProvider titleProvider = null;
 	private int currentPosition = 0;
-	private Paint paintText;
-	private Paint paintSelected;
-	private Path path;
+	private final Rect[] titleBounds = new Rect[TITLE_BOUNDS];
+	private final CharSequence[] titles = new CharSequence[TITLE_BOUNDS];
+	private int firstBound;
+	private int lastBound;
+	/* Titles and their widths from earlier frames, by position modulo the cache size */
+	private final int[] cachedPositions = new int[TITLE_CACHE_SIZE];
+	private final CharSequence[] cachedTitles = new CharSequence[TITLE_CACHE_SIZE];
+	/*
+	 * Reused for the default titles when there is no TitleProvider, one per
+	 * title of a frame
+	 */
+	private final StringBuilder[] defaultTitles = new StringBuilder[TITLE_BOUNDS];
+	private final float[] cachedWidths = new float[TITLE_CACHE_SIZE];
+	/*
+	 * Cached titles of an AsyncTitleProvider from before a data change, drawn
+	 * until their replacements are loaded
+	 */
+	private final boolean[] staleTitles = new boolean[TITLE_CACHE_SIZE];
+	private float cachedTextSize;
+	private Typeface cachedTypeface;
+	private int titleCacheHits;
+	private int titleCacheMisses;
+	private Adapter observedAdapter;
+	/* Titles loading from an AsyncTitleProvider, touched on the UI thread only */
+	private final ArrayList<TitleTask> titleTasks = new ArrayList<TitleTask>();
+	/* Loaded titles waiting to be delivered to the UI thread in one batch */
+	private final ArrayList<TitleTask> loadedTitles = new ArrayList<TitleTask>();
+	private boolean deliveryPosted;
+	private Executor titleExecutor;
+	/* Posts from the background thread, also while detached */
+	private final Handler handler = new Handler(Looper.getMainLooper());
+	private final Runnable deliverTitles = new Runnable() {
+
+		@Override
+		public void run() {
+			deliverLoadedTitles();
+		}
+	};
+	private final DataSetObserver titleObserver = new DataSetObserver() {
+
+		@Override
+		public void onChanged() {
+			onTitlesChanged();
+			invalidate();
+		}
+
+		@Override
+		public void onInvalidated() {
+			invalidateTitles();
+			invalidate();
+		}
+	};
+	private TextPaint paintText;
+	private TextPaint paintSelected;
+	/* Null unless titles are drawn from bitmaps */
+	private TitleBitmapCache titleBitmaps;
+	private final Path footerLinePath = new Path();
+	private final Path footerTrianglePath = new Path();
 	private Paint paintFooterLine;
 	private Paint paintFooterTriangle;
 	private float footerTriangleHeight;
@@ -113,6 +187,8 @@ public class TitleFlowIndicator extends TextView implements FlowIndicator {
 		else
 			typeface = getTypefaceByIndex(typefaceIndex);
 		typeface = Typeface.create(typeface, textStyleIndex);
+		paintText.setTypeface(typeface);
+		paintSelected.setTypeface(typeface);
 
 	}
 
@@ -120,11 +196,11 @@ public class TitleFlowIndicator extends TextView implements FlowIndicator {
 	 * Initialize draw objects
 	 */
 	private void initDraw(int textColor, float textSize, int selectedColor, boolean selectedBold, float selectedSize, float footerLineHeight, int footerColor) {
-		paintText = new Paint();
+		paintText = new TextPaint();
 		paintText.setColor(textColor);
 		paintText.setTextSize(textSize);
 		paintText.setAntiAlias(true);
-		paintSelected = new Paint();
+		paintSelected = new TextPaint();
 		paintSelected.setColor(selectedColor);
 		paintSelected.setTextSize(selectedSize);
 		paintSelected.setFakeBoldText(selectedBold);
@@ -136,6 +212,11 @@ public class TitleFlowIndicator extends TextView implements FlowIndicator {
 		paintFooterTriangle = new Paint();
 		paintFooterTriangle.setStyle(Paint.Style.FILL_AND_STROKE);
 		paintFooterTriangle.setColor(footerColor);
+		for (int i = 0; i < TITLE_BOUNDS; i++) {
+			titleBounds[i] = new Rect();
+			defaultTitles[i] = new StringBuilder();
+		}
+		invalidateTitles();
 	}
 
 	/*
@@ -147,14 +228,15 @@ public class TitleFlowIndicator extends TextView implements FlowIndicator {
 	protected void onDraw(Canvas canvas) {
 		super.onDraw(canvas);
 
-		// Calculate views bounds
-		ArrayList<Rect> bounds = calculateAllBounds(paintText);
-
 		// If no value then add a fake one
 		int count = (viewFlow != null && viewFlow.getAdapter() != null) ? viewFlow.getAdapter().getCount() : 1;
+		int position = Math.max(0, Math.min(currentPosition, count - 1));
+
+		// Calculate views bounds around the scroll position
+		calculateBounds(paintText, position, count);
 
 		// Verify if the current view must be clipped to the screen
-		Rect curViewBound = bounds.get(currentPosition);
+		Rect curViewBound = getBound(position);
 		int curViewWidth = curViewBound.right - curViewBound.left;
 		if (curViewBound.left < 0) {
 			// Try to clip to the screen (left side)
@@ -166,17 +248,18 @@ public class TitleFlowIndicator extends TextView implements FlowIndicator {
 		}
 
 		// Left views starting from the current position
-		if (currentPosition > 0) {
-			for (int iLoop = currentPosition - 1; iLoop >= 0; iLoop--) {
-				Rect bound = bounds.get(iLoop);
+		if (position > firstBound) {
+			for (int iLoop = Math.min(position - 1, lastBound); iLoop >= firstBound; iLoop--) {
+				Rect bound = getBound(iLoop);
 				int w = bound.right - bound.left;
 				// Si left side is outside the screen
 				if (bound.left < 0) {
 					// Try to clip to the screen (left side)
 					clipViewOnTheLeft(bound, w);
 					// Except if there's an intersection with the right view
-					if (iLoop < count - 1 && currentPosition != iLoop) {
-						Rect rightBound = bounds.get(iLoop + 1);
+					if (iLoop < count - 1 && position != iLoop) {
+						// Next to the window, that is the current view
+						Rect rightBound = getBound(iLoop < lastBound ? iLoop + 1 : position);
 						// Intersection
 						if (bound.right + TITLE_PADDING > rightBound.left) {
 							bound.left = rightBound.left - (w + (int) titlePadding);
@@ -186,17 +269,18 @@ public class TitleFlowIndicator extends TextView implements FlowIndicator {
 			}
 		}
 		// Right views starting from the current position
-		if (currentPosition < count - 1) {
-			for (int iLoop = currentPosition + 1; iLoop < count; iLoop++) {
-				Rect bound = bounds.get(iLoop);
+		if (position < lastBound) {
+			for (int iLoop = Math.max(position + 1, firstBound); iLoop <= lastBound; iLoop++) {
+				Rect bound = getBound(iLoop);
 				int w = bound.right - bound.left;
 				// If right side is outside the screen
 				if (bound.right > getLeft() + getWidth()) {
 					// Try to clip to the screen (right side)
 					clipViewOnTheRight(bound, w);
 					// Except if there's an intersection with the left view
-					if (iLoop > 0 && currentPosition != iLoop) {
-						Rect leftBound = bounds.get(iLoop - 1);
+					if (iLoop > 0 && position != iLoop) {
+						// Next to the window, that is the current view
+						Rect leftBound = getBound(iLoop > firstBound ? iLoop - 1 : position);
 						// Intersection
 						if (bound.left - TITLE_PADDING < leftBound.right) {
 							bound.left = leftBound.right + (int) titlePadding;
@@ -207,39 +291,120 @@ public class TitleFlowIndicator extends TextView implements FlowIndicator {
 		}
 
 		// Now draw views
-		for (int iLoop = 0; iLoop < count; iLoop++) {
-			// Get the title
-			String title = getTitle(iLoop);
-			Rect bound = bounds.get(iLoop);
-			// Only if one side is visible
-			if ((bound.left > getLeft() && bound.left < getLeft() + getWidth()) || (bound.right > getLeft() && bound.right < getLeft() + getWidth())) {
-				Paint paint = paintText;
-				// Change the color is the title is closed to the center
-				int middle = (bound.left + bound.right) / 2;
-				if (Math.abs(middle - (getWidth() / 2)) < 20) {
-					paint = paintSelected;
-				}
-				paint.setTypeface(typeface);
-				canvas.drawText(title, bound.left, bound.bottom, paint);
-			}
+		for (int iLoop = firstBound; iLoop <= lastBound; iLoop++) {
+			drawTitle(canvas, iLoop);
+		}
+		if (position < firstBound || position > lastBound) {
+			drawTitle(canvas, position);
 		}
 
 		// Draw the footer line
-		path = new Path();
-		int coordY = getHeight() - 1;
-		coordY -= (footerLineHeight % 2 == 1) ? footerLineHeight / 2 : footerLineHeight / 2 - 1;
-		path.moveTo(0, coordY);
-		path.lineTo(getWidth(), coordY);
-		path.close();
-		canvas.drawPath(path, paintFooterLine);
+		canvas.drawPath(footerLinePath, paintFooterLine);
 		// Draw the footer triangle
-		path = new Path();
-		path.moveTo(getWidth() / 2, getHeight() - footerLineHeight - footerTriangleHeight);
-		path.lineTo(getWidth() / 2 + footerTriangleHeight, getHeight() - footerLineHeight);
-		path.lineTo(getWidth() / 2 - footerTriangleHeight, getHeight() - footerLineHeight);
-		path.close();
-		canvas.drawPath(path, paintFooterTriangle);
+		canvas.drawPath(footerTrianglePath, paintFooterTriangle);
+
+	}
+
+	/**
+	 * Draws the title of a position with calculated bounds, if one side of it
+	 * is visible.
+	 */
+	private void drawTitle(Canvas canvas, int position) {
+		// Get the title
+		CharSequence title = titles[boundIndex(position)];
+		Rect bound = getBound(position);
+		// Only if one side is visible
+		if ((bound.left > getLeft() && bound.left < getLeft() + getWidth()) || (bound.right > getLeft() && bound.right < getLeft() + getWidth())) {
+			TextPaint paint = paintText;
+			// Change the color is the title is closed to the center
+			int middle = (bound.left + bound.right) / 2;
+			if (Math.abs(middle - (getWidth() / 2)) < 20) {
+				paint = paintSelected;
+			}
+			if (titleBitmaps != null)
+				drawTitleBitmap(canvas, position, title, bound, paint);
+			else
+				canvas.drawText(title, 0, title.length(), bound.left, bound.bottom, paint);
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see android.view.View#onSizeChanged(int, int, int, int)
+	 */
+	@Override
+	protected void onSizeChanged(int w, int h, int oldw, int oldh) {
+		super.onSizeChanged(w, h, oldw, oldh);
+		// The footer only depends on the size, so build it once per size
+		footerLinePath.reset();
+		int coordY = h - 1;
+		coordY -= (footerLineHeight % 2 == 1) ? footerLineHeight / 2 : footerLineHeight / 2 - 1;
+		footerLinePath.moveTo(0, coordY);
+		footerLinePath.lineTo(w, coordY);
+		footerLinePath.close();
+		footerTrianglePath.reset();
+		footerTrianglePath.moveTo(w / 2, h - footerLineHeight - footerTriangleHeight);
+		footerTrianglePath.lineTo(w / 2 + footerTriangleHeight, h - footerLineHeight);
+		footerTrianglePath.lineTo(w / 2 - footerTriangleHeight, h - footerLineHeight);
+		footerTrianglePath.close();
+		// Titles are ellipsized to the width
+		if (titleBitmaps != null)
+			titleBitmaps.clear();
+	}
+
+	/**
+	 * Draws a title from its cached bitmap, rendering the bitmap first if
+	 * needed. The bitmap is placed so that its baseline matches the one used by
+	 * drawText.
+	 */
+	private void drawTitleBitmap(Canvas canvas, int position, CharSequence title, Rect bound, TextPaint paint) {
+		final boolean selected = paint == paintSelected;
+		Bitmap bitmap = titleBitmaps.get(position, selected);
+		if (bitmap == null) {
+			bitmap = renderTitle(title, paint);
+			if (bitmap == null) {
+				// Too large for the cache
+				canvas.drawText(title, 0, title.length(), bound.left, bound.bottom, paint);
+				return;
+			}
+			titleBitmaps.put(position, selected, bitmap);
+		}
+		canvas.drawBitmap(bitmap, bound.left, bound.bottom + paint.ascent(), null);
+	}
 
+	/**
+	 * Renders a title into a new bitmap, ellipsized to the width of the view.
+	 * 
+	 * @return the bitmap or null if it would not fit in the cache
+	 */
+	private Bitmap renderTitle(CharSequence title, TextPaint paint) {
+		CharSequence text = title;
+		if (getWidth() > 0)
+			text = TextUtils.ellipsize(title, paint, getWidth(), TextUtils.TruncateAt.END);
+		final int width = (int) Math.ceil(paint.measureText(text, 0, text.length()));
+		final int height = (int) Math.ceil(paint.descent() - paint.ascent());
+		if (width <= 0 || height <= 0 || !titleBitmaps.fits(width * height * 4))
+			return null;
+		Bitmap bitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+		new Canvas(bitmap).drawText(text, 0, text.length(), 0, -paint.ascent(), paint);
+		return bitmap;
+	}
+
+	/**
+	 * Draw the titles from bitmaps, rendered once per title instead of
+	 * drawing the text on every frame. This is cheaper while scrolling,
+	 * especially with custom typefaces. Titles wider than the view are
+	 * ellipsized. Disabled by default.
+	 * 
+	 * @param maxBytes
+	 *            the maximum total size of the bitmaps in bytes. The least
+	 *            recently drawn bitmaps are dropped when it is exceeded. 0
+	 *            disables the bitmaps.
+	 */
+	public void setTitleBitmapCacheSize(int maxBytes) {
+		titleBitmaps = maxBytes > 0 ? new TitleBitmapCache(maxBytes) : null;
+		invalidate();
 	}
 
 	/**
@@ -269,60 +434,340 @@ public class TitleFlowIndicator extends TextView implements FlowIndicator {
 	}
 
 	/**
-	 * Calculate views bounds and scroll them according to the current index
+	 * Calculate views bounds and scroll them according to the current index.
+	 * Only the titles of the views which can be on the screen are measured:
+	 * those around the scroll position, and the current title, which sticks
+	 * to the edge of the screen. The work is the same however far the
+	 * current position is from the scroll position.
 	 * 
 	 * @param paint
-	 * @param currentIndex
-	 * @return
+	 * @param position
+	 *            the current position
+	 * @param count
 	 */
-	private ArrayList<Rect> calculateAllBounds(Paint paint) {
-		ArrayList<Rect> list = new ArrayList<Rect>();
-		// For each views (If no values then add a fake one)
-		int count = (viewFlow != null && viewFlow.getAdapter() != null) ? viewFlow.getAdapter().getCount() : 1;
-		for (int iLoop = 0; iLoop < count; iLoop++) {
-			Rect bounds = calcBounds(iLoop, paint);
-			int w = (bounds.right - bounds.left);
-			int h = (bounds.bottom - bounds.top);
-			bounds.left = (getWidth() / 2) - (w / 2) - currentScroll + (iLoop * getWidth());
-			bounds.right = bounds.left + w;
-			bounds.top = 0;
-			bounds.bottom = h;
-			list.add(bounds);
+	private void calculateBounds(Paint paint, int position, int count) {
+		observeAdapter();
+		if (paint.getTextSize() != cachedTextSize
+				|| paint.getTypeface() != cachedTypeface) {
+			invalidateTitles();
+			cachedTextSize = paint.getTextSize();
+			cachedTypeface = paint.getTypeface();
+		}
+
+		final int width = getWidth();
+		int scrollPosition = position;
+		if (width > 0) {
+			// Integer floor division, exact at any scroll
+			scrollPosition = currentScroll >= 0 ? currentScroll / width
+					: -((-currentScroll - 1) / width) - 1;
 		}
+		firstBound = Math.max(0, scrollPosition - TITLE_WINDOW_MARGIN);
+		lastBound = Math.min(count - 1, scrollPosition + TITLE_WINDOW_MARGIN);
+		cancelTitleTasks(firstBound, lastBound, position);
+
+		for (int iLoop = firstBound; iLoop <= lastBound; iLoop++) {
+			calculateBound(iLoop, paint);
+		}
+		if (position < firstBound || position > lastBound) {
+			calculateBound(position, paint);
+		}
+	}
 
-		return list;
+	private void calculateBound(int position, Paint paint) {
+		Rect bounds = getBound(position);
+		calcBounds(position, paint, bounds);
+		int w = (bounds.right - bounds.left);
+		int h = (bounds.bottom - bounds.top);
+		bounds.left = (getWidth() / 2) - (w / 2) - currentScroll + (position * getWidth());
+		bounds.right = bounds.left + w;
+		bounds.top = 0;
+		bounds.bottom = h;
 	}
 
 	/**
-	 * Calculate the bounds for a view's title
+	 * Returns the index of a position in titleBounds and titles. Positions
+	 * between firstBound and lastBound come first, the current position is
+	 * kept last when outside of them.
+	 */
+	private int boundIndex(int position) {
+		if (position < firstBound || position > lastBound)
+			return TITLE_BOUNDS - 1;
+		return position - firstBound;
+	}
+
+	/**
+	 * Returns the bounds calculated for a position between firstBound and
+	 * lastBound, or for the current position
+	 */
+	private Rect getBound(int position) {
+		return titleBounds[boundIndex(position)];
+	}
+
+	/**
+	 * Calculate the bounds for a view's title. The title is kept for drawing
+	 * the current frame.
 	 * 
 	 * @param index
 	 * @param paint
-	 * @return
+	 * @param bounds
+	 *            the rect receiving the bounds
 	 */
-	private Rect calcBounds(int index, Paint paint) {
-		// Get the title
-		String title = getTitle(index);
+	private void calcBounds(int index, Paint paint, Rect bounds) {
+		final int slot = index % TITLE_CACHE_SIZE;
+		final CharSequence title;
+		float width;
+		if (titleProvider == null) {
+			// Not cached, the builder is only valid for the current frame
+			title = getDefaultTitle(index);
+			width = paint.measureText(title, 0, title.length());
+		} else if (cachedPositions[slot] == index && !staleTitles[slot]) {
+			titleCacheHits++;
+			title = cachedTitles[slot];
+			width = cachedWidths[slot];
+		} else if (titleProvider instanceof AsyncTitleProvider) {
+			if (cachedPositions[slot] == index) {
+				// The stale title is drawn until the new one is loaded
+				loadTitle(index);
+				title = cachedTitles[slot];
+				width = cachedWidths[slot];
+			} else {
+				// Drawn as a placeholder until the title is loaded
+				title = loadTitle(index);
+				width = paint.measureText(title, 0, title.length());
+			}
+		} else {
+			titleCacheMisses++;
+			title = titleProvider.getTitle(index);
+			width = paint.measureText(title, 0, title.length());
+			cachedTitles[slot] = title;
+			cachedWidths[slot] = width;
+			cachedPositions[slot] = index;
+			staleTitles[slot] = false;
+		}
+		titles[boundIndex(index)] = title;
+		// Bitmaps are ellipsized to the width of the view
+		if (titleBitmaps != null && getWidth() > 0)
+			width = Math.min(width, getWidth());
 		// Calculate the text bounds
-		Rect bounds = new Rect();
-		bounds.right = (int) paint.measureText(title);
-		bounds.bottom = (int) (paint.descent() - paint.ascent());
-		return bounds;
+		bounds.set(0, 0, (int) width,
+				(int) (paint.descent() - paint.ascent()));
 	}
 
 	/**
-	 * Returns the title
+	 * Starts loading the title of a position from the
+	 * {@link AsyncTitleProvider}, unless it is already loading.
+	 * 
+	 * @return the placeholder to draw meanwhile
+	 */
+	private CharSequence loadTitle(int position) {
+		final AsyncTitleProvider provider = (AsyncTitleProvider) titleProvider;
+		for (int i = 0; i < titleTasks.size(); i++) {
+			if (titleTasks.get(i).position == position)
+				return provider.getPlaceholder(position);
+		}
+		titleCacheMisses++;
+		TitleTask task = new TitleTask(provider, position);
+		titleTasks.add(task);
+		getTitleExecutor().execute(task);
+		return provider.getPlaceholder(position);
+	}
+
+	/**
+	 * Cancels the titles loading for positions outside of first and last,
+	 * except for the current position.
+	 */
+	private void cancelTitleTasks(int first, int last, int current) {
+		for (int i = titleTasks.size() - 1; i >= 0; i--) {
+			final TitleTask task = titleTasks.get(i);
+			if ((task.position < first || task.position > last)
+					&& task.position != current) {
+				task.cancelled = true;
+				titleTasks.remove(i);
+			}
+		}
+	}
+
+	/**
+	 * Cancels all titles loading.
+	 */
+	private void cancelTitleTasks() {
+		for (int i = 0; i < titleTasks.size(); i++)
+			titleTasks.get(i).cancelled = true;
+		titleTasks.clear();
+	}
+
+	/**
+	 * Moves the titles loaded since the last delivery into the title cache,
+	 * and redraws once for all of them.
+	 */
+	private void deliverLoadedTitles() {
+		boolean delivered = false;
+		synchronized (loadedTitles) {
+			deliveryPosted = false;
+			for (int i = 0; i < loadedTitles.size(); i++) {
+				final TitleTask task = loadedTitles.get(i);
+				if (task.cancelled || task.provider != titleProvider)
+					continue;
+				titleTasks.remove(task);
+				if (task.error != null) {
+					// Loaded again when next drawn, without redrawing now
+					Log.w(TAG, "Loading the title of position " + task.position
+							+ " failed", task.error);
+					continue;
+				}
+				final int slot = task.position % TITLE_CACHE_SIZE;
+				cachedTitles[slot] = task.title;
+				cachedWidths[slot] = paintText.measureText(task.title, 0, task.title.length());
+				cachedPositions[slot] = task.position;
+				staleTitles[slot] = false;
+				// The placeholder may have been rendered for the position
+				if (titleBitmaps != null)
+					titleBitmaps.remove(task.position);
+				delivered = true;
+			}
+			loadedTitles.clear();
+		}
+		if (delivered)
+			invalidate();
+	}
+
+	/**
+	 * Set the {@link Executor} on which the titles of an
+	 * {@link AsyncTitleProvider} are loaded. By default a single background
+	 * thread shared by all TitleFlowIndicators is used, separate from the one
+	 * preparing the views of the ViewFlows.
+	 * 
+	 * @param executor
+	 *            the executor, or null to use the default one
+	 */
+	public void setTitleExecutor(Executor executor) {
+		titleExecutor = executor;
+	}
+
+	private Executor getTitleExecutor() {
+		if (titleExecutor != null)
+			return titleExecutor;
+		synchronized (TitleFlowIndicator.class) {
+			if (sDefaultTitleExecutor == null)
+				sDefaultTitleExecutor = ViewFlow.newBackgroundExecutor("TitleFlowIndicator titles");
+			return sDefaultTitleExecutor;
+		}
+	}
+
+	/**
+	 * Loads a title on the background thread and hands it over to the UI
+	 * thread, unless cancelled in between. A failure is handed over as well,
+	 * so that the position is no longer loading.
+	 */
+	private class TitleTask implements Runnable {
+		final AsyncTitleProvider provider;
+		final int position;
+		volatile boolean cancelled;
+		String title;
+		RuntimeException error;
+
+		TitleTask(AsyncTitleProvider provider, int position) {
+			this.provider = provider;
+			this.position = position;
+		}
+
+		@Override
+		public void run() {
+			if (cancelled)
+				return;
+			try {
+				title = provider.getTitle(position);
+			} catch (RuntimeException e) {
+				error = e;
+			}
+			synchronized (loadedTitles) {
+				loadedTitles.add(this);
+				// Titles loaded until the UI thread runs are delivered together
+				if (!deliveryPosted) {
+					deliveryPosted = true;
+					handler.post(deliverTitles);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Watches the adapter of the ViewFlow, so that cached titles are dropped
+	 * when its data changes.
+	 */
+	private void observeAdapter() {
+		final Adapter adapter = viewFlow != null ? viewFlow.getAdapter() : null;
+		if (adapter != observedAdapter) {
+			if (observedAdapter != null)
+				observedAdapter.unregisterDataSetObserver(titleObserver);
+			observedAdapter = adapter;
+			if (adapter != null)
+				adapter.registerDataSetObserver(titleObserver);
+			invalidateTitles();
+		}
+	}
+
+	/**
+	 * Drops the cached titles and their measured widths. The cache is cleared
+	 * automatically when the adapter of the ViewFlow notifies a change, or
+	 * when the title provider or text paint changes. Call this when the titles
+	 * change without the adapter being notified.
+	 */
+	public void invalidateTitles() {
+		cancelTitleTasks();
+		for (int i = 0; i < TITLE_CACHE_SIZE; i++) {
+			cachedPositions[i] = -1;
+			cachedTitles[i] = null;
+			staleTitles[i] = false;
+		}
+		if (titleBitmaps != null)
+			titleBitmaps.clear();
+	}
+
+	/**
+	 * Called when the adapter of the ViewFlow notifies a change. The titles
+	 * of an {@link AsyncTitleProvider} are loaded again, but the cached ones
+	 * are drawn until they are replaced, so that frequent changes do not
+	 * make the titles flicker.
+	 */
+	private void onTitlesChanged() {
+		if (!(titleProvider instanceof AsyncTitleProvider)) {
+			invalidateTitles();
+			return;
+		}
+		cancelTitleTasks();
+		for (int i = 0; i < TITLE_CACHE_SIZE; i++)
+			staleTitles[i] = cachedPositions[i] != -1;
+	}
+
+	/**
+	 * @return the number of titles taken from the title cache
+	 */
+	public int getTitleCacheHitCount() {
+		return titleCacheHits;
+	}
+
+	/**
+	 * @return the number of titles requested from the {@link TitleProvider}
+	 *         because they were not cached, including the titles loaded from
+	 *         an {@link AsyncTitleProvider}
+	 */
+	public int getTitleCacheMissCount() {
+		return titleCacheMisses;
+	}
+
+	/**
+	 * Returns the default title, used when there is no TitleProvider. Each
+	 * title of a frame has its own builder, so the titles do not overwrite
+	 * each other.
 	 * 
 	 * @param pos
 	 * @return
 	 */
-	private String getTitle(int pos) {
-		// Set the default title
-		String title = "title " + pos;
-		// If the TitleProvider exist
-		if (titleProvider != null) {
-			title = titleProvider.getTitle(pos);
-		}
+	private CharSequence getDefaultTitle(int pos) {
+		StringBuilder title = defaultTitles[boundIndex(pos)];
+		title.setLength(0);
+		title.append("title ").append(pos);
 		return title;
 	}
 
@@ -338,6 +783,23 @@ public class TitleFlowIndicator extends TextView implements FlowIndicator {
 		invalidate();
 	}
 
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * org.taptwo.android.widget.ViewFlow.ViewScrollListener#onScrolled(int,
+	 * float)
+	 */
+	@Override
+	public void onScrolled(int position, float offset) {
+		// The position is kept out of the float math to stay exact
+		final int scroll = position * getWidth() + Math.round(offset * getWidth());
+		if (scroll != currentScroll) {
+			currentScroll = scroll;
+			invalidate();
+		}
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * 
@@ -366,12 +828,31 @@ public class TitleFlowIndicator extends TextView implements FlowIndicator {
 	}
 
 	/**
-	 * Set the title provider
+	 * Set the title provider. The titles of an {@link AsyncTitleProvider} are
+	 * loaded on a background thread.
 	 * 
 	 * @param provider
 	 */
 	public void setTitleProvider(TitleProvider provider) {
 		titleProvider = provider;
+		invalidateTitles();
+	}
+
+	@Override
+	protected void onDetachedFromWindow() {
+		super.onDetachedFromWindow();
+		// Stop watching the adapter, it is watched again on the next draw
+		if (observedAdapter != null) {
+			observedAdapter.unregisterDataSetObserver(titleObserver);
+			observedAdapter = null;
+		}
+		// Titles loading are not delivered once detached
+		cancelTitleTasks();
+		handler.removeCallbacks(deliverTitles);
+		synchronized (loadedTitles) {
+			loadedTitles.clear();
+			deliveryPosted = false;
+		}
 	}
 
 	/*
@@ -421,10 +902,9 @@ public class TitleFlowIndicator extends TextView implements FlowIndicator {
 		}
 		// Measure the height
 		else {
-			// Calculate the text bounds
-			Rect bounds = new Rect();
-			bounds.bottom = (int) (paintText.descent() - paintText.ascent());
-			result = bounds.bottom - bounds.top + (int) footerTriangleHeight + (int) footerLineHeight + 10;
+			// Calculate the text height
+			int textHeight = (int) (paintText.descent() - paintText.ascent());
+			result = textHeight + (int) footerTriangleHeight + (int) footerLineHeight + 10;
 			return result;
 		}
 		return result;
@@ -0,0 +1,261 @@
+/*
+ * Copyright (C) 2011 Patrik Åkerfeldt
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.taptwo.android.widget;
+
+import android.view.View;
+
+/**
+ * A fixed capacity ring buffer holding the {@link View}s loaded by a
+ * {@link ViewFlow}. The buffer always holds a contiguous range of adapter
+ * positions, so a {@link View} can be looked up by its adapter position in
+ * constant time. Adding and removing at either end never allocates.
+ */
+class ViewBuffer {
+
+	private View[] mViews;
+	private int[] mTypes;
+	private long[] mIds;
+	private int mHead;
+	private int mSize;
+	private int mFirstPosition;
+
+	ViewBuffer(int capacity) {
+		mViews = new View[Math.max(1, capacity)];
+		mTypes = new int[mViews.length];
+		mIds = new long[mViews.length];
+	}
+
+	int capacity() {
+		return mViews.length;
+	}
+
+	/**
+	 * Changes the capacity of the buffer, keeping the buffered {@link View}s.
+	 * 
+	 * @param capacity
+	 *            the new capacity, at least the current size of the buffer
+	 */
+	void setCapacity(int capacity) {
+		capacity = Math.max(1, capacity);
+		if (capacity < mSize)
+			throw new IllegalStateException("Capacity " + capacity
+					+ " is less than size " + mSize);
+		if (capacity == mViews.length)
+			return;
+		final View[] views = new View[capacity];
+		final int[] types = new int[capacity];
+		final long[] ids = new long[capacity];
+		for (int i = 0; i < mSize; i++) {
+			final int slot = slot(i);
+			views[i] = mViews[slot];
+			types[i] = mTypes[slot];
+			ids[i] = mIds[slot];
+		}
+		mViews = views;
+		mTypes = types;
+		mIds = ids;
+		mHead = 0;
+	}
+
+	int size() {
+		return mSize;
+	}
+
+	boolean isEmpty() {
+		return mSize == 0;
+	}
+
+	boolean isFull() {
+		return mSize == mViews.length;
+	}
+
+	/**
+	 * @return the adapter position of the first {@link View} in the buffer
+	 */
+	int getFirstPosition() {
+		return mFirstPosition;
+	}
+
+	/**
+	 * @return the adapter position of the last {@link View} in the buffer, or
+	 *         {@code getFirstPosition() - 1} if the buffer is empty
+	 */
+	int getLastPosition() {
+		return mFirstPosition + mSize - 1;
+	}
+
+	boolean contains(int position) {
+		return position >= mFirstPosition && position < mFirstPosition + mSize;
+	}
+
+	/**
+	 * Returns the index in the buffer of the given adapter position.
+	 *
+	 * @param position
+	 *            the adapter position
+	 * @return the buffer index or -1 if the position is not buffered
+	 */
+	int indexOf(int position) {
+		return contains(position) ? position - mFirstPosition : -1;
+	}
+
+	/**
+	 * @param position
+	 *            the adapter position
+	 * @return the {@link View} bound to the position or null if the position
+	 *         is not buffered
+	 */
+	View get(int position) {
+		return contains(position) ? mViews[slot(position - mFirstPosition)]
+				: null;
+	}
+
+	/**
+	 * @param index
+	 *            the index in the buffer
+	 * @return the {@link View} at the buffer index
+	 */
+	View getAt(int index) {
+		if (index < 0 || index >= mSize)
+			throw new IndexOutOfBoundsException("index: " + index + ", size: "
+					+ mSize);
+		return mViews[slot(index)];
+	}
+
+	/**
+	 * Replaces the {@link View} bound to a buffered position.
+	 */
+	void set(int position, View view) {
+		if (!contains(position))
+			throw new IndexOutOfBoundsException("position: " + position);
+		mViews[slot(position - mFirstPosition)] = view;
+	}
+
+	/**
+	 * Removes the {@link View} at the buffer index, leaving an empty slot
+	 * behind. Used when the buffer is about to be cleared.
+	 */
+	View takeAt(int index) {
+		final View view = getAt(index);
+		mViews[slot(index)] = null;
+		return view;
+	}
+
+	int getTypeAt(int index) {
+		return mTypes[slot(index)];
+	}
+
+	long getIdAt(int index) {
+		return mIds[slot(index)];
+	}
+
+	/**
+	 * @return the adapter view type of the first {@link View} in the buffer
+	 */
+	int getFirstType() {
+		return mTypes[mHead];
+	}
+
+	/**
+	 * @return the adapter view type of the last {@link View} in the buffer
+	 */
+	int getLastType() {
+		return mTypes[slot(mSize - 1)];
+	}
+
+	/**
+	 * Anchors an empty buffer at the given adapter position. The next
+	 * {@link View} added at either end will be bound to this position.
+	 */
+	void reset(int position) {
+		if (mSize != 0)
+			throw new IllegalStateException("Buffer is not empty");
+		mHead = 0;
+		mFirstPosition = position;
+	}
+
+	/**
+	 * Adds a {@link View} for the position preceding the first buffered one.
+	 * If the buffer is empty, the {@link View} is bound to the position given
+	 * to {@link #reset(int)}.
+	 */
+	void addFirst(View view, int type, long id) {
+		ensureRoom();
+		if (mSize != 0) {
+			mHead = (mHead == 0 ? mViews.length : mHead) - 1;
+			mFirstPosition--;
+		}
+		mViews[mHead] = view;
+		mTypes[mHead] = type;
+		mIds[mHead] = id;
+		mSize++;
+	}
+
+	/**
+	 * Adds a {@link View} for the position following the last buffered one.
+	 */
+	void addLast(View view, int type, long id) {
+		ensureRoom();
+		final int slot = slot(mSize);
+		mViews[slot] = view;
+		mTypes[slot] = type;
+		mIds[slot] = id;
+		mSize++;
+	}
+
+	View removeFirst() {
+		if (mSize == 0)
+			return null;
+		final View view = mViews[mHead];
+		mViews[mHead] = null;
+		mHead = slot(1);
+		mSize--;
+		if (mSize != 0)
+			mFirstPosition++;
+		return view;
+	}
+
+	View removeLast() {
+		if (mSize == 0)
+			return null;
+		final int last = slot(mSize - 1);
+		final View view = mViews[last];
+		mViews[last] = null;
+		mSize--;
+		return view;
+	}
+
+	/**
+	 * Empties the buffer without handing out the {@link View}s.
+	 */
+	void clear() {
+		for (int i = 0; i < mSize; i++) {
+			mViews[slot(i)] = null;
+		}
+		mSize = 0;
+	}
+
+	private void ensureRoom() {
+		if (mSize == mViews.length)
+			throw new IllegalStateException("Buffer is full, capacity: "
+					+ mViews.length);
+	}
+
+	private int slot(int index) {
+		final int slot = mHead + index;
+		return slot < mViews.length ? slot : slot - mViews.length;
+	}
+}
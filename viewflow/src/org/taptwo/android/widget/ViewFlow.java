@@ -15,15 +15,30 @@
  */
 package org.taptwo.android.widget;
 
+import java.util.ArrayList;
+import java.lang.reflect.InvocationHandler;
+import java.io.PrintWriter;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
 import java.util.EnumSet;
-import java.util.LinkedList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
 
 import org.taptwo.android.widget.viewflow.R;
 
+import android.app.ActivityManager;
+import android.content.ComponentCallbacks;
 import android.content.Context;
 import android.content.res.Configuration;
 import android.content.res.TypedArray;
 import android.database.DataSetObserver;
+import android.graphics.Canvas;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.os.SystemClock;
 import android.util.AttributeSet;
 import android.util.Log;
 import android.view.MotionEvent;
@@ -32,6 +47,7 @@ import android.view.View;
 import android.view.ViewConfiguration;
 import android.view.ViewGroup;
 import android.view.ViewTreeObserver.OnGlobalLayoutListener;
+import android.view.ViewTreeObserver.OnPreDrawListener;
 import android.widget.AbsListView;
 import android.widget.Adapter;
 import android.widget.AdapterView;
@@ -42,38 +58,121 @@ import android.widget.Scroller;
  * {@link Adapter}. The ViewFlow uses a buffer to store loaded {@link View}s in.
  * The default size of the buffer is 3 elements on both sides of the currently
  * visible {@link View}, making up a total buffer size of 3 * 2 + 1 = 7. The
- * buffer size can be changed using the {@code sidebuffer} xml attribute.
+ * buffer size can be changed using the {@code sidebuffer} xml attribute or
+ * {@link #setSideBuffer(int)}.
  * 
  */
 public class ViewFlow extends AdapterView<Adapter> {
 
 	private static final int SNAP_VELOCITY = 1000;
+	private static final int FAST_FLING_VELOCITY = 3 * SNAP_VELOCITY;
 	private static final int INVALID_SCREEN = -1;
 	private final static int TOUCH_STATE_REST = 0;
 	private final static int TOUCH_STATE_SCROLLING = 1;
-
-	private LinkedList<View> mLoadedViews;
-	private LinkedList<View> mRecycledViews;
+	/* ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW, added in API level 16 */
+	private static final int TRIM_MEMORY_RUNNING_LOW = 10;
+	/* ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN, added in API level 14 */
+	private static final int TRIM_MEMORY_UI_HIDDEN = 20;
+	/* The heap size of devices without ActivityManager.getMemoryClass() */
+	private static final int DEFAULT_MEMORY_CLASS = 16;
+	private static final int LOW_MEMORY_SIDE_BUFFER = 1;
+	private static final int LOW_RAM_MEMORY_CLASS = 32;
+	private static final long MEMORY_PRESSURE_TIMEOUT = 30000;
+	private static final long FILL_FRAME_BUDGET = 8;
+	private static final long FILL_RETRY_DELAY = 16;
+	private static final String TAG = "viewflow";
+
+	private ViewBuffer mLoadedViews;
+	private ViewBuffer mSpareBuffer;
+	private RecycleBin mRecycler;
 	private int mCurrentBufferIndex;
 	private int mCurrentAdapterIndex;
 	private int mSideBuffer = 2;
-	private Scroller mScroller;
+	private int mRequestedSideBuffer;
+	private SettleScroller mScroller;
+	private Scroller mFlingScroller;
 	private VelocityTracker mVelocityTracker;
 	private int mTouchState = TOUCH_STATE_REST;
 	private float mLastMotionX;
+	private long mLastSampleTime = -1;
+	private int mLastSampleAction = -1;
 	private int mTouchSlop;
 	private int mMaximumVelocity;
 	private int mCurrentScreen;
 	private int mNextScreen = INVALID_SCREEN;
 	private boolean mFirstLayout = true;
+	private int mWidthMeasureSpec;
+	private int mHeightMeasureSpec;
 	private ViewSwitchListener mViewSwitchListener;
 	private ViewLazyInitializeListener mViewInitializeListener;
 	private EnumSet<LazyInit> mLazyInit = EnumSet.allOf(LazyInit.class);
 	private Adapter mAdapter;
-	private int mLastScrollDirection;
+	private boolean mMomentum;
+	private int mLastFlingVelocity;
+	private boolean mAsymmetricBuffer;
 	private AdapterDataSetObserver mDataSetObserver;
-	private FlowIndicator mIndicator;
+	private final ArrayList<FlowIndicator> mIndicators = new ArrayList<FlowIndicator>();
+	private final ArrayList<ViewScrollListener> mScrollListeners = new ArrayList<ViewScrollListener>();
+	private boolean mScrollDirty;
+	private int mLastDispatchedScroll;
 	private int mLastOrientation = -1;
+	private boolean mAdaptToMemoryPressure;
+	private boolean mLowRamDevice;
+	private boolean mMemoryPressure;
+	private boolean mRestorePending;
+	private ComponentCallbacks mMemoryCallbacks;
+	private Executor mPrepareExecutor;
+	private Handler mHandler;
+	private final ArrayList<PrepareTask> mPrepareTasks = new ArrayList<PrepareTask>();
+	private boolean mIncrementalFill;
+	private boolean mFillPending;
+	private int mFillFirst;
+	private int mFillLast;
+	private long mFillStartTime;
+	private long mTimeToFirstPage = -1;
+	private boolean mFirstPagePending;
+	private BufferFillListener mBufferFillListener;
+	private int mCulledDraws;
+	private int mCulledMeasures;
+	private FlowMetrics mMetrics;
+	private SlowGetViewListener mSlowGetViewListener;
+	private long mGetViewBudget;
+
+	private static ExecutorService sDefaultPrepareExecutor;
+	private static Method sPostInvalidateOnAnimation;
+	private static boolean sPostInvalidateOnAnimationChecked;
+	private static final Object[] NO_ARGS = new Object[0];
+
+	private final Runnable mMemoryPressureTimeout = new Runnable() {
+
+		@Override
+		public void run() {
+			if (getWindowVisibility() == VISIBLE) {
+				mMemoryPressure = false;
+				applySideBuffer();
+			} else {
+				mRestorePending = true;
+			}
+		}
+	};
+
+	private final Runnable mFillRunnable = new Runnable() {
+
+		@Override
+		public void run() {
+			fillBuffer();
+		}
+	};
+
+	private final OnPreDrawListener mScrollDispatcher = new OnPreDrawListener() {
+
+		@Override
+		public boolean onPreDraw() {
+			if (mScrollDirty)
+				dispatchScrolled();
+			return true;
+		}
+	};
 
 	private OnGlobalLayoutListener orientationChangeListener = new OnGlobalLayoutListener() {
 
@@ -102,10 +201,74 @@ public class ViewFlow extends AdapterView<Adapter> {
 
 	}
 
+	/**
+	 * Receives the scroll position of a {@link ViewFlow}, at most once per
+	 * frame, before the frame is drawn.
+	 */
+	public static interface ViewScrollListener {
+
+		/**
+		 * This method is called when the ViewFlow has scrolled.
+		 * 
+		 * @param position
+		 *            the position in the adapter of the {@link View} at the
+		 *            left edge of the ViewFlow
+		 * @param offset
+		 *            the fraction of the width of that {@link View} scrolled
+		 *            out of the ViewFlow, from 0 inclusive to 1 exclusive
+		 */
+		void onScrolled(int position, float offset);
+	}
+
+	/**
+	 * Receives a call back when the adapter took longer than the budget set
+	 * with {@link ViewFlow#setSlowGetViewListener} to return a view.
+	 */
+	public static interface SlowGetViewListener {
+
+		/**
+		 * @param position
+		 *            the position in the adapter of the requested view
+		 * @param millis
+		 *            the time spent in {@code getView}
+		 */
+		void onSlowGetView(int position, long millis);
+	}
+
 	public static interface ViewLazyInitializeListener {
 		void onViewLazyInitialize(View view, int position);
 	}
 
+	/**
+	 * Receives the timings of a view buffer being filled from scratch, on
+	 * {@link ViewFlow#setSelection(int)} beyond the current buffer range or
+	 * after the adapter data has changed.
+	 */
+	public static interface BufferFillListener {
+
+		/**
+		 * This method is called when the current view has been drawn for the
+		 * first time.
+		 * 
+		 * @param position
+		 *            the position in the adapter of the current view
+		 * @param millis
+		 *            the time since the fill was started
+		 */
+		void onFirstPageDrawn(int position, long millis);
+
+		/**
+		 * This method is called when all views of the view buffer have been
+		 * loaded.
+		 * 
+		 * @param position
+		 *            the position in the adapter of the current view
+		 * @param millis
+		 *            the time since the fill was started
+		 */
+		void onBufferFilled(int position, long millis);
+	}
+
 	enum LazyInit {
 		LEFT, RIGHT
 	}
@@ -131,9 +294,13 @@ public class ViewFlow extends AdapterView<Adapter> {
 	}
 
 	private void init() {
-		mLoadedViews = new LinkedList<View>();
-		mRecycledViews = new LinkedList<View>();
-		mScroller = new Scroller(getContext());
+		mRequestedSideBuffer = mSideBuffer;
+		mLoadedViews = new ViewBuffer(2 * mSideBuffer + 1);
+		mSpareBuffer = new ViewBuffer(2 * mSideBuffer + 1);
+		mRecycler = new RecycleBin();
+		mHandler = new Handler(Looper.getMainLooper());
+		mScroller = new SettleScroller(new SettleCurve.Spring());
+		mFlingScroller = new Scroller(getContext());
 		final ViewConfiguration configuration = ViewConfiguration
 				.get(getContext());
 		mTouchSlop = configuration.getScaledTouchSlop();
@@ -151,6 +318,182 @@ public class ViewFlow extends AdapterView<Adapter> {
 		return mAdapter.getCount();
 	}
 
+	/**
+	 * Changes the number of views loaded on each side of the current view.
+	 * The view buffer is grown or shrunk in place; views still within range
+	 * are kept.
+	 * 
+	 * @param sideBuffer
+	 *            the number of views on each side of the current view
+	 */
+	public void setSideBuffer(int sideBuffer) {
+		mRequestedSideBuffer = Math.max(0, sideBuffer);
+		applySideBuffer();
+	}
+
+	/**
+	 * @return the number of views currently loaded on each side of the
+	 *         current view. Less than requested while under memory pressure.
+	 */
+	public int getSideBuffer() {
+		return mSideBuffer;
+	}
+
+	/**
+	 * Enable or disable adapting to memory pressure. When enabled, the side
+	 * buffer is reduced and all recycled views are released when the system
+	 * asks the application to trim its memory, and restored once no further
+	 * request has been made for a while. On devices with a small heap, the
+	 * reduced side buffer is always used. Trim requests are only received on
+	 * API level 14 and above.
+	 * 
+	 * @param adapt
+	 *            true to adapt the view buffer to memory pressure
+	 */
+	public void setAdaptToMemoryPressure(boolean adapt) {
+		if (mAdaptToMemoryPressure == adapt)
+			return;
+		mAdaptToMemoryPressure = adapt;
+		if (adapt) {
+			ActivityManager activityManager = (ActivityManager) getContext()
+					.getSystemService(Context.ACTIVITY_SERVICE);
+			mLowRamDevice = activityManager != null
+					&& getMemoryClass(activityManager) <= LOW_RAM_MEMORY_CLASS;
+			if (getWindowToken() != null)
+				registerMemoryCallbacks();
+		} else {
+			unregisterMemoryCallbacks();
+			removeCallbacks(mMemoryPressureTimeout);
+			mLowRamDevice = false;
+			mMemoryPressure = false;
+			mRestorePending = false;
+		}
+		applySideBuffer();
+	}
+
+	/**
+	 * Calls ActivityManager.getMemoryClass() where supported (API level 5).
+	 */
+	private static int getMemoryClass(ActivityManager activityManager) {
+		try {
+			return (Integer) ActivityManager.class.getMethod("getMemoryClass")
+					.invoke(activityManager);
+		} catch (Exception e) {
+			// Not available before Eclair
+			return DEFAULT_MEMORY_CLASS;
+		}
+	}
+
+	/**
+	 * Registers for trim memory requests where supported (API level 14).
+	 * ComponentCallbacks2 is implemented through a proxy, so that the
+	 * ViewFlow still loads on older platforms.
+	 */
+	private void registerMemoryCallbacks() {
+		if (mMemoryCallbacks != null)
+			return;
+		try {
+			final Class<?> callbacks = Class
+					.forName("android.content.ComponentCallbacks2");
+			final ComponentCallbacks proxy = (ComponentCallbacks) Proxy
+					.newProxyInstance(callbacks.getClassLoader(),
+							new Class<?>[] { callbacks },
+							new MemoryPressureCallbacks());
+			Context.class.getMethod("registerComponentCallbacks",
+					ComponentCallbacks.class).invoke(
+					getContext().getApplicationContext(), proxy);
+			mMemoryCallbacks = proxy;
+		} catch (Exception e) {
+			// Not available before Ice Cream Sandwich
+		}
+	}
+
+	private void unregisterMemoryCallbacks() {
+		if (mMemoryCallbacks != null) {
+			try {
+				Context.class.getMethod("unregisterComponentCallbacks",
+						ComponentCallbacks.class).invoke(
+						getContext().getApplicationContext(), mMemoryCallbacks);
+			} catch (Exception e) {
+				// Only registered where available
+			}
+			mMemoryCallbacks = null;
+		}
+	}
+
+	private void onMemoryPressure() {
+		mRecycler.clear();
+		mMemoryPressure = true;
+		mRestorePending = false;
+		applySideBuffer();
+		removeCallbacks(mMemoryPressureTimeout);
+		postDelayed(mMemoryPressureTimeout, MEMORY_PRESSURE_TIMEOUT);
+	}
+
+	/**
+	 * Grows or shrinks the view buffer to the requested side buffer, limited
+	 * while under memory pressure.
+	 */
+	private void applySideBuffer() {
+		int sideBuffer = mRequestedSideBuffer;
+		if (mMemoryPressure || mLowRamDevice)
+			sideBuffer = Math.min(sideBuffer, LOW_MEMORY_SIDE_BUFFER);
+		if (sideBuffer == mSideBuffer)
+			return;
+
+		final int capacity = 2 * sideBuffer + 1;
+		mSideBuffer = sideBuffer;
+		if (capacity > mLoadedViews.capacity()) {
+			mLoadedViews.setCapacity(capacity);
+			mSpareBuffer.setCapacity(capacity);
+		}
+		if (mAdapter != null && !mLoadedViews.isEmpty()) {
+			if (!updateBufferRange(0))
+				requestLayout();
+			mCurrentBufferIndex = mLoadedViews.indexOf(mCurrentAdapterIndex);
+			setVisibleView(mCurrentBufferIndex, true);
+		}
+		if (capacity < mLoadedViews.capacity()) {
+			mLoadedViews.setCapacity(capacity);
+			mSpareBuffer.setCapacity(capacity);
+			mRecycler.trim();
+		}
+		logBuffer();
+	}
+
+	@Override
+	protected void onAttachedToWindow() {
+		super.onAttachedToWindow();
+		if (mAdaptToMemoryPressure)
+			registerMemoryCallbacks();
+		if (mFillPending && !mFirstPagePending)
+			mHandler.post(mFillRunnable);
+		getViewTreeObserver().addOnPreDrawListener(mScrollDispatcher);
+		mScrollDirty = true;
+	}
+
+	@Override
+	protected void onDetachedFromWindow() {
+		super.onDetachedFromWindow();
+		unregisterMemoryCallbacks();
+		mHandler.removeCallbacks(mFillRunnable);
+		getViewTreeObserver().removeOnPreDrawListener(mScrollDispatcher);
+		if (mVelocityTracker != null) {
+			mVelocityTracker.recycle();
+			mVelocityTracker = null;
+		}
+	}
+
+	@Override
+	protected void onWindowVisibilityChanged(int visibility) {
+		super.onWindowVisibilityChanged(visibility);
+		if (visibility == VISIBLE && mRestorePending) {
+			mRestorePending = false;
+			mMemoryPressure = false;
+			applySideBuffer();
+		}
+	}
+
 	@Override
 	protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
 		super.onMeasure(widthMeasureSpec, heightMeasureSpec);
@@ -168,165 +511,235 @@ public class ViewFlow extends AdapterView<Adapter> {
 					"ViewFlow can only be used in EXACTLY mode.");
 		}
 
-		// The children are given the same width and height as the workspace
+		mWidthMeasureSpec = widthMeasureSpec;
+		mHeightMeasureSpec = heightMeasureSpec;
+
+		// The children are given the same width and height as the workspace.
+		// Children away from the viewport are measured once scrolled to.
 		final int count = getChildCount();
 		for (int i = 0; i < count; i++) {
-			getChildAt(i).measure(widthMeasureSpec, heightMeasureSpec);
+			if (isNearViewport(i, width))
+				getChildAt(i).measure(widthMeasureSpec, heightMeasureSpec);
+			else
+				mCulledMeasures++;
 		}
 
 		if (mFirstLayout) {
-			mScroller.startScroll(0, 0, mCurrentScreen * width, 0, 0);
+			mScroller.jumpTo(mCurrentScreen * width);
 			mFirstLayout = false;
 		}
 	}
 
 	@Override
 	protected void onLayout(boolean changed, int l, int t, int r, int b) {
+		final FlowMetrics metrics = mMetrics;
+		if (metrics != null) {
+			metrics.onLayout();
+			metrics.beginSection("ViewFlow layout");
+		}
+		final int pageWidth = r - l;
 		int childLeft = 0;
 
 		final int count = getChildCount();
 		for (int i = 0; i < count; i++) {
 			final View child = getChildAt(i);
 			if (child.getVisibility() != View.GONE) {
-				final int childWidth = child.getMeasuredWidth();
-				child.layout(childLeft, 0, childLeft + childWidth,
-						child.getMeasuredHeight());
-				childLeft += childWidth;
+				if (isNearViewport(i, pageWidth)) {
+					final int childWidth = child.getMeasuredWidth();
+					child.layout(childLeft, 0, childLeft + childWidth,
+							child.getMeasuredHeight());
+					childLeft += childWidth;
+				} else {
+					// Culled children are only moved, so that their left edge
+					// is valid for drawChild() even before they are laid out
+					if (child.getLeft() != childLeft)
+						child.offsetLeftAndRight(childLeft - child.getLeft());
+					childLeft += pageWidth;
+				}
 			}
 		}
+		if (metrics != null)
+			metrics.endSection();
 	}
 
 	@Override
-	public boolean onInterceptTouchEvent(MotionEvent ev) {
-		if (getChildCount() == 0)
+	protected boolean drawChild(Canvas canvas, View child, long drawingTime) {
+		// Culled children may not have been laid out, so only their left edge
+		// is valid, their width is the one of a page
+		final int pageWidth = getWidth();
+		final int left = child.getLeft();
+		final int scrollX = getScrollX();
+		if (left + pageWidth <= scrollX || left >= scrollX + pageWidth) {
+			mCulledDraws++;
 			return false;
-
-		if (mVelocityTracker == null) {
-			mVelocityTracker = VelocityTracker.obtain();
 		}
-		mVelocityTracker.addMovement(ev);
-
-		final int action = ev.getAction();
-		final float x = ev.getX();
-
-		switch (action) {
-		case MotionEvent.ACTION_DOWN:
-			/*
-			 * If being flinged and user touches, stop the fling. isFinished
-			 * will be false if being flinged.
-			 */
-			if (!mScroller.isFinished()) {
-				mScroller.abortAnimation();
-			}
-
-			// Remember where the motion event started
-			mLastMotionX = x;
-
-			mTouchState = mScroller.isFinished() ? TOUCH_STATE_REST
-					: TOUCH_STATE_SCROLLING;
-
-			break;
-
-		case MotionEvent.ACTION_MOVE:
-			final int deltaX = (int) (mLastMotionX - x);
-
-			boolean xMoved = Math.abs(deltaX) > mTouchSlop;
-
-			if (xMoved) {
-				// Scroll if the user moved far enough along the X axis
-				mTouchState = TOUCH_STATE_SCROLLING;
+		return super.drawChild(canvas, child, drawingTime);
+	}
 
-				if (mViewInitializeListener != null)
-					initializeView(deltaX);
-			}
+	/**
+	 * @return true if the child at index is the current view, one of its
+	 *         neighbours or within one view of the scroll window
+	 */
+	private boolean isNearViewport(int index, int pageWidth) {
+		if (Math.abs(index - mCurrentBufferIndex) <= 1)
+			return true;
+		if (pageWidth <= 0)
+			return false;
+		final int left = index * pageWidth;
+		final int scrollX = getScrollX();
+		return left + pageWidth > scrollX - pageWidth
+				&& left < scrollX + 2 * pageWidth;
+	}
 
-			if (mTouchState == TOUCH_STATE_SCROLLING) {
-				// Scroll to follow the motion event
+	private boolean needsLayout(View child, int pageWidth, int pageHeight) {
+		return child.isLayoutRequested() || child.getMeasuredWidth() != pageWidth
+				|| child.getMeasuredHeight() != pageHeight;
+	}
 
-				mLastMotionX = x;
+	/**
+	 * Measures and lays out the children near the viewport which were culled
+	 * by the last layout pass, and moves those which are still valid into
+	 * place.
+	 */
+	private void layoutCulledChildren() {
+		final int pageWidth = getWidth();
+		final int pageHeight = getHeight();
+		if (mFirstLayout || pageWidth <= 0 || isLayoutRequested())
+			return;
+		int childLeft = 0;
 
-				final int scrollX = getScrollX();
-				if (deltaX < 0) {
-					if (scrollX > 0) {
-						scrollBy(Math.max(-scrollX, deltaX), 0);
-					}
-				} else if (deltaX > 0) {
-					final int availableToScroll = getChildAt(
-							getChildCount() - 1).getRight()
-							- scrollX - getWidth();
-					if (availableToScroll > 0) {
-						scrollBy(Math.min(availableToScroll, deltaX), 0);
-					}
+		final int count = getChildCount();
+		for (int i = 0; i < count; i++) {
+			final View child = getChildAt(i);
+			if (child.getVisibility() == View.GONE)
+				continue;
+			if (isNearViewport(i, pageWidth)) {
+				if (needsLayout(child, pageWidth, pageHeight)) {
+					child.measure(mWidthMeasureSpec, mHeightMeasureSpec);
+					child.layout(childLeft, 0, childLeft + child.getMeasuredWidth(),
+							child.getMeasuredHeight());
+				} else if (child.getLeft() != childLeft) {
+					child.offsetLeftAndRight(childLeft - child.getLeft());
 				}
-				return true;
 			}
-			break;
+			childLeft += pageWidth;
+		}
+	}
 
-		case MotionEvent.ACTION_UP:
-			if (mTouchState == TOUCH_STATE_SCROLLING) {
-				final VelocityTracker velocityTracker = mVelocityTracker;
-				velocityTracker.computeCurrentVelocity(1000, mMaximumVelocity);
-				int velocityX = (int) velocityTracker.getXVelocity();
+	/**
+	 * @return the number of times a child was skipped while drawing because
+	 *         it was outside of the viewport
+	 */
+	public int getCulledDrawCount() {
+		return mCulledDraws;
+	}
 
-				if (velocityX > SNAP_VELOCITY && mCurrentScreen > 0) {
-					// Fling hard enough to move left
-					snapToScreen(mCurrentScreen - 1);
-				} else if (velocityX < -SNAP_VELOCITY
-						&& mCurrentScreen < getChildCount() - 1) {
-					// Fling hard enough to move right
-					snapToScreen(mCurrentScreen + 1);
-				} else {
-					snapToDestination();
-				}
+	/**
+	 * @return the number of times a child was skipped while measuring because
+	 *         it was away from the viewport
+	 */
+	public int getCulledMeasureCount() {
+		return mCulledMeasures;
+	}
 
-				if (mVelocityTracker != null) {
-					mVelocityTracker.recycle();
-					mVelocityTracker = null;
-				}
-			}
+	@Override
+	protected void dispatchDraw(Canvas canvas) {
+		super.dispatchDraw(canvas);
+		if (mFirstPagePending && getChildCount() > 0) {
+			mFirstPagePending = false;
+			mTimeToFirstPage = SystemClock.uptimeMillis() - mFillStartTime;
+			if (mBufferFillListener != null)
+				mBufferFillListener.onFirstPageDrawn(mCurrentAdapterIndex,
+						mTimeToFirstPage);
+			// The rest of the buffer is filled once the first page is on
+			// screen
+			if (mFillPending)
+				mHandler.post(mFillRunnable);
+			else
+				notifyBufferFilled();
+		}
+	}
 
-			mTouchState = TOUCH_STATE_REST;
+	@Override
+	public boolean onInterceptTouchEvent(MotionEvent ev) {
+		return handleTouchEvent(ev, true);
+	}
 
-			break;
-		case MotionEvent.ACTION_CANCEL:
+	@Override
+	public boolean onTouchEvent(MotionEvent ev) {
+		return handleTouchEvent(ev, false);
+	}
+
+	@Override
+	public void requestDisallowInterceptTouchEvent(boolean disallowIntercept) {
+		super.requestDisallowInterceptTouchEvent(disallowIntercept);
+		/*
+		 * A touch stopping a settle leaves the flow between two views. If a
+		 * child then takes the gesture over, the rest of it never reaches the
+		 * flow, so the flow snaps to the nearest view right away.
+		 */
+		if (disallowIntercept && mTouchState == TOUCH_STATE_SCROLLING
+				&& !isSettling()) {
 			mTouchState = TOUCH_STATE_REST;
+			if (mVelocityTracker != null)
+				mVelocityTracker.clear();
+			snapToDestination();
 		}
-		return false;
 	}
 
-	@Override
-	public boolean onTouchEvent(MotionEvent ev) {
+	/**
+	 * The drag and fling state machine shared by
+	 * {@link #onInterceptTouchEvent(MotionEvent)} and
+	 * {@link #onTouchEvent(MotionEvent)}. An event passed to both is only
+	 * added to the velocity tracker once.
+	 * 
+	 * @param intercept
+	 *            true if called to intercept the event from a child
+	 * @return true if the event was intercepted or consumed
+	 */
+	private boolean handleTouchEvent(MotionEvent ev, boolean intercept) {
 		if (getChildCount() == 0)
 			return false;
 
 		if (mVelocityTracker == null) {
 			mVelocityTracker = VelocityTracker.obtain();
 		}
-		mVelocityTracker.addMovement(ev);
 
 		final int action = ev.getAction();
 		final float x = ev.getX();
 
+		if (ev.getEventTime() != mLastSampleTime || action != mLastSampleAction) {
+			mLastSampleTime = ev.getEventTime();
+			mLastSampleAction = action;
+			if (action == MotionEvent.ACTION_DOWN)
+				mVelocityTracker.clear();
+			// Historical samples of batched moves are used by the tracker
+			mVelocityTracker.addMovement(ev);
+		}
+
 		switch (action) {
 		case MotionEvent.ACTION_DOWN:
 			/*
-			 * If being flinged and user touches, stop the fling. isFinished
-			 * will be false if being flinged.
+			 * If being flinged and user touches, stop the fling where it is and
+			 * let the new gesture take over. isFinished will be false if being
+			 * flinged.
 			 */
 			if (!mScroller.isFinished()) {
-				mScroller.abortAnimation();
+				mScroller.forceFinished(true);
+				mNextScreen = INVALID_SCREEN;
 			}
 
 			// Remember where the motion event started
 			mLastMotionX = x;
 
-			mTouchState = mScroller.isFinished() ? TOUCH_STATE_REST
+			// Keep scrolling if the flow was stopped between two views
+			mTouchState = getScrollX() == mCurrentScreen * getWidth() ? TOUCH_STATE_REST
 					: TOUCH_STATE_SCROLLING;
 
 			break;
 
 		case MotionEvent.ACTION_MOVE:
-			final int deltaX = (int) (mLastMotionX - x);
+			final float deltaX = mLastMotionX - x;
 
 			boolean xMoved = Math.abs(deltaX) > mTouchSlop;
 
@@ -339,21 +752,27 @@ public class ViewFlow extends AdapterView<Adapter> {
 			}
 
 			if (mTouchState == TOUCH_STATE_SCROLLING) {
-				// Scroll to follow the motion event
-
-				mLastMotionX = x;
+				// Scroll to follow the motion event, keeping the fraction of
+				// a pixel not scrolled yet for the next move
+				final int scrollDelta = (int) deltaX;
+				mLastMotionX -= scrollDelta;
 
 				final int scrollX = getScrollX();
-				if (deltaX < 0) {
+				if (scrollDelta < 0) {
 					if (scrollX > 0) {
-						scrollBy(Math.max(-scrollX, deltaX), 0);
+						scrollBy(Math.max(-scrollX, scrollDelta), 0);
+					} else {
+						mLastMotionX = x;
 					}
-				} else if (deltaX > 0) {
-					final int availableToScroll = getChildAt(
-							getChildCount() - 1).getRight()
+				} else if (scrollDelta > 0) {
+					// The last child may be culled and not laid out, so the
+					// limit is taken from the buffer instead of its bounds
+					final int availableToScroll = getChildCount() * getWidth()
 							- scrollX - getWidth();
 					if (availableToScroll > 0) {
-						scrollBy(Math.min(availableToScroll, deltaX), 0);
+						scrollBy(Math.min(availableToScroll, scrollDelta), 0);
+					} else {
+						mLastMotionX = x;
 					}
 				}
 				return true;
@@ -365,46 +784,51 @@ public class ViewFlow extends AdapterView<Adapter> {
 				final VelocityTracker velocityTracker = mVelocityTracker;
 				velocityTracker.computeCurrentVelocity(1000, mMaximumVelocity);
 				int velocityX = (int) velocityTracker.getXVelocity();
+				mLastFlingVelocity = Math.abs(velocityX);
 
-				if (velocityX > SNAP_VELOCITY && mCurrentScreen > 0) {
+				if (mMomentum) {
+					snapToScreen(computeFlingScreen(velocityX), velocityX);
+				} else if (velocityX > SNAP_VELOCITY && mCurrentScreen > 0) {
 					// Fling hard enough to move left
-					snapToScreen(mCurrentScreen - 1);
+					snapToScreen(mCurrentScreen - 1, velocityX);
 				} else if (velocityX < -SNAP_VELOCITY
 						&& mCurrentScreen < getChildCount() - 1) {
 					// Fling hard enough to move right
-					snapToScreen(mCurrentScreen + 1);
+					snapToScreen(mCurrentScreen + 1, velocityX);
 				} else {
-					snapToDestination();
+					snapToDestination(velocityX);
 				}
 
-				if (mVelocityTracker != null) {
-					mVelocityTracker.recycle();
-					mVelocityTracker = null;
-				}
+				// The tracker is kept for the next gesture
+				mVelocityTracker.clear();
 			}
 
 			mTouchState = TOUCH_STATE_REST;
 
 			break;
 		case MotionEvent.ACTION_CANCEL:
-			snapToDestination();
+			if (!intercept)
+				snapToDestination();
+			mVelocityTracker.clear();
 			mTouchState = TOUCH_STATE_REST;
 		}
-		return true;
+		return !intercept;
 	}
 
 	private void initializeView(final float direction) {
 		if (direction > 0) {
 			if (mLazyInit.contains(LazyInit.RIGHT)) {
 				mLazyInit.remove(LazyInit.RIGHT);
-				if (mCurrentBufferIndex+1 < mLoadedViews.size())
-					mViewInitializeListener.onViewLazyInitialize(mLoadedViews.get(mCurrentBufferIndex + 1), mCurrentAdapterIndex + 1);
+				View view = mLoadedViews.get(mCurrentAdapterIndex + 1);
+				if (view != null)
+					mViewInitializeListener.onViewLazyInitialize(view, mCurrentAdapterIndex + 1);
 			}
 		} else {
 			if (mLazyInit.contains(LazyInit.LEFT)) {
 				mLazyInit.remove(LazyInit.LEFT);
-				if (mCurrentBufferIndex > 0)
-					mViewInitializeListener.onViewLazyInitialize(mLoadedViews.get(mCurrentBufferIndex - 1), mCurrentAdapterIndex - 1);
+				View view = mLoadedViews.get(mCurrentAdapterIndex - 1);
+				if (view != null)
+					mViewInitializeListener.onViewLazyInitialize(view, mCurrentAdapterIndex - 1);
 			}
 		}
 	}
@@ -412,68 +836,233 @@ public class ViewFlow extends AdapterView<Adapter> {
 	@Override
 	protected void onScrollChanged(int h, int v, int oldh, int oldv) {
 		super.onScrollChanged(h, v, oldh, oldv);
-		if (mIndicator != null) {
-			/*
-			 * The actual horizontal scroll origin does typically not match the
-			 * perceived one. Therefore, we need to calculate the perceived
-			 * horizontal scroll origin here, since we use a view buffer.
-			 */
-			int hPerceived = h + (mCurrentAdapterIndex - mCurrentBufferIndex)
-					* getWidth();
-			mIndicator.onScrolled(hPerceived, v, oldh, oldv);
+		layoutCulledChildren();
+		// Scroll changes are delivered once, before the next frame is drawn
+		mScrollDirty = true;
+	}
+
+	private void dispatchScrolled() {
+		mScrollDirty = false;
+		if (mIndicators.isEmpty() && mScrollListeners.isEmpty())
+			return;
+		/*
+		 * The actual horizontal scroll origin does typically not match the
+		 * perceived one. Therefore, we need to calculate the perceived
+		 * horizontal scroll origin here, since we use a view buffer.
+		 */
+		final int width = getWidth();
+		final int hPerceived = getScrollX()
+				+ (mCurrentAdapterIndex - mCurrentBufferIndex) * width;
+		final int oldh = mLastDispatchedScroll;
+		mLastDispatchedScroll = hPerceived;
+		int position = mCurrentAdapterIndex;
+		float offset = 0;
+		if (width > 0) {
+			// Integer floor division, exact at any position and keeping the
+			// offset within [0, 1)
+			position = hPerceived >= 0 ? hPerceived / width
+					: -((-hPerceived - 1) / width) - 1;
+			offset = (hPerceived - position * width) / (float) width;
+		}
+
+		for (int i = 0; i < mIndicators.size(); i++) {
+			final FlowIndicator indicator = mIndicators.get(i);
+			if (indicator instanceof ViewScrollListener)
+				((ViewScrollListener) indicator).onScrolled(position, offset);
+			else
+				indicator.onScrolled(hPerceived, getScrollY(), oldh, getScrollY());
+		}
+		for (int i = 0; i < mScrollListeners.size(); i++) {
+			mScrollListeners.get(i).onScrolled(position, offset);
 		}
 	}
 
+	/**
+	 * Add a listener that will receive the scroll position of the ViewFlow,
+	 * at most once per frame.
+	 * 
+	 * @param l
+	 *            the scroll listener
+	 */
+	public void addOnViewScrollListener(ViewScrollListener l) {
+		if (!mScrollListeners.contains(l))
+			mScrollListeners.add(l);
+		mScrollDirty = true;
+	}
+
+	public void removeOnViewScrollListener(ViewScrollListener l) {
+		mScrollListeners.remove(l);
+	}
+
 	private void snapToDestination() {
+		snapToDestination(0);
+	}
+
+	private void snapToDestination(int velocity) {
 		final int screenWidth = getWidth();
 		final int whichScreen = (getScrollX() + (screenWidth / 2))
 				/ screenWidth;
 
-		snapToScreen(whichScreen);
+		snapToScreen(whichScreen, velocity);
+	}
+
+	/**
+	 * Determines where a momentum fling comes to rest. The fling distance
+	 * grows with the velocity and may span several views, but a fling
+	 * always moves at least one view.
+	 * 
+	 * @param velocityX
+	 *            the release velocity in pixels per second
+	 * @return the index in the buffer of the view to settle on, possibly
+	 *         outside of the views currently loaded
+	 */
+	private int computeFlingScreen(int velocityX) {
+		final int screenWidth = getWidth();
+		if (Math.abs(velocityX) <= SNAP_VELOCITY)
+			return (getScrollX() + (screenWidth / 2)) / screenWidth;
+
+		mFlingScroller.fling(getScrollX(), 0, -velocityX, 0, Integer.MIN_VALUE,
+				Integer.MAX_VALUE, 0, 0);
+		final int finalX = mFlingScroller.getFinalX();
+		mFlingScroller.forceFinished(true);
+
+		final int whichScreen = (int) Math.floor((finalX + screenWidth / 2f)
+				/ screenWidth);
+		if (velocityX > 0)
+			return Math.min(whichScreen, mCurrentScreen - 1);
+		return Math.max(whichScreen, mCurrentScreen + 1);
 	}
 
-	private void snapToScreen(int whichScreen) {
-		mLastScrollDirection = whichScreen - mCurrentScreen;
+	private void snapToScreen(int whichScreen, int velocity) {
+		// A new gesture takes over from a running settle
 		if (!mScroller.isFinished())
-			return;
+			mScroller.forceFinished(true);
 
-		whichScreen = Math.max(0, Math.min(whichScreen, getChildCount() - 1));
+		if (mMomentum && mAdapter != null) {
+			// Views beyond the buffer are loaded while settling
+			whichScreen = Math.max(mCurrentScreen - mCurrentAdapterIndex,
+					Math.min(whichScreen, mCurrentScreen + mAdapter.getCount()
+							- 1 - mCurrentAdapterIndex));
+		} else {
+			whichScreen = Math.max(0, Math.min(whichScreen, getChildCount() - 1));
+		}
 
 		mNextScreen = whichScreen;
 
-		final int newX = whichScreen * getWidth();
-		final int delta = newX - getScrollX();
-		mScroller.startScroll(getScrollX(), 0, delta, 0, Math.abs(delta) * 2);
+		// The settle starts at the release velocity of the scroll position
+		mScroller.settle(getScrollX(), whichScreen * getWidth(), -velocity);
 		invalidate();
 	}
 
+	/**
+	 * Set the curve along which the ViewFlow settles on a view after being
+	 * released. The default is a {@link SettleCurve.Spring}.
+	 * 
+	 * @param curve
+	 *            the settle curve
+	 */
+	public void setSettleCurve(SettleCurve curve) {
+		mScroller.setCurve(curve != null ? curve : new SettleCurve.Spring());
+	}
+
+	/**
+	 * Replaces the clock driving the settle animation. Used to replay
+	 * gestures with a controlled time, without depending on frame timing.
+	 */
+	void setSettleClock(SettleScroller.Clock clock) {
+		mScroller.setClock(clock);
+	}
+
+	/**
+	 * @return true while settling on a view, until the view buffer has been
+	 *         switched to it
+	 */
+	boolean isSettling() {
+		return !mScroller.isFinished() || mNextScreen != INVALID_SCREEN;
+	}
+
 	@Override
 	public void computeScroll() {
 		if (mScroller.computeScrollOffset()) {
-			scrollTo(mScroller.getCurrX(), mScroller.getCurrY());
-			postInvalidate();
+			scrollTo(mScroller.getCurrX(), getScrollY());
+			if (mMomentum && mNextScreen != INVALID_SCREEN)
+				switchWhileSettling();
+			postInvalidateOnAnimationCompat();
 		} else if (mNextScreen != INVALID_SCREEN) {
-			mCurrentScreen = Math.max(0,
+			final int nextScreen = Math.max(0,
 					Math.min(mNextScreen, getChildCount() - 1));
+			final int direction = nextScreen - mCurrentScreen;
+			mCurrentScreen = nextScreen;
 			mNextScreen = INVALID_SCREEN;
-			postViewSwitched(mLastScrollDirection);
+			postViewSwitched(direction);
 		}
 	}
 
 	/**
-	 * Scroll to the {@link View} in the view buffer specified by the index.
-	 * 
-	 * @param indexInBuffer
-	 *            Index of the view in the view buffer.
+	 * Invalidates on the next animation frame where supported (API level 16),
+	 * so the settle is drawn in step with the display.
+	 */
+	private void postInvalidateOnAnimationCompat() {
+		if (!sPostInvalidateOnAnimationChecked) {
+			sPostInvalidateOnAnimationChecked = true;
+			try {
+				sPostInvalidateOnAnimation = View.class
+						.getMethod("postInvalidateOnAnimation");
+			} catch (NoSuchMethodException e) {
+				// Not available before Jelly Bean
+			}
+		}
+		if (sPostInvalidateOnAnimation != null) {
+			try {
+				sPostInvalidateOnAnimation.invoke(this, NO_ARGS);
+				return;
+			} catch (Exception e) {
+				sPostInvalidateOnAnimation = null;
+			}
+		}
+		postInvalidate();
+	}
+
+	/**
+	 * Switches to the view under the center of the screen while a momentum
+	 * settle crosses views, so that the buffer keeps up with the animation.
+	 * The running settle is moved along with the shifted scroll position and
+	 * continues undisturbed.
+	 */
+	private void switchWhileSettling() {
+		final int screenWidth = getWidth();
+		if (!canLayoutInPlace())
+			return;
+		final int screen = Math.max(0, Math.min(
+				(getScrollX() + (screenWidth / 2)) / screenWidth,
+				getChildCount() - 1));
+		final int direction = screen - mCurrentScreen;
+		if (direction == 0)
+			return;
+
+		final int oldFirst = mLoadedViews.getFirstPosition();
+		switchBuffer(direction);
+		final int pageShift = oldFirst - mLoadedViews.getFirstPosition();
+		mCurrentScreen = mCurrentBufferIndex;
+		mNextScreen += pageShift;
+		mScroller.offset(pageShift * screenWidth);
+		notifyViewSwitched();
+		logBuffer();
+	}
+
+	/**
+	 * Scroll to the {@link View} in the view buffer specified by the index.
+	 * 
+	 * @param indexInBuffer
+	 *            Index of the view in the view buffer.
 	 */
 	private void setVisibleView(int indexInBuffer, boolean uiThread) {
 		mCurrentScreen = Math.max(0,
 				Math.min(indexInBuffer, getChildCount() - 1));
 		int dx = (mCurrentScreen * getWidth()) - mScroller.getCurrX();
-		mScroller.startScroll(mScroller.getCurrX(), mScroller.getCurrY(), dx,
-				0, 0);
+		mScroller.jumpTo(mScroller.getCurrX() + dx);
 		if(dx == 0)
-			onScrollChanged(mScroller.getCurrX() + dx, mScroller.getCurrY(), mScroller.getCurrX() + dx, mScroller.getCurrY());
+			onScrollChanged(mScroller.getCurrX() + dx, getScrollY(), mScroller.getCurrX() + dx, getScrollY());
 		if (uiThread)
 			invalidate();
 		else
@@ -495,6 +1084,31 @@ public class ViewFlow extends AdapterView<Adapter> {
 		mViewInitializeListener = l;
 	}
 
+	/**
+	 * Enable or disable momentum scrolling. When enabled, a fling travels a
+	 * distance that grows with its velocity, possibly across several views.
+	 * Views are switched and loaded as the animation crosses them.
+	 * 
+	 * @param momentum
+	 *            true to enable multi-view flings
+	 */
+	public void setMomentumEnabled(boolean momentum) {
+		mMomentum = momentum;
+	}
+
+	/**
+	 * Enable or disable the asymmetric view buffer. When enabled, more views
+	 * are loaded in the direction the user is scrolling and fewer are kept
+	 * behind. After a fast fling the buffer ahead is widened further. The
+	 * total number of loaded views never exceeds {@code 2 * sidebuffer + 1}.
+	 * 
+	 * @param asymmetric
+	 *            true to load the buffer in the direction of travel
+	 */
+	public void setAsymmetricBuffer(boolean asymmetric) {
+		mAsymmetricBuffer = asymmetric;
+	}
+
 	@Override
 	public Adapter getAdapter() {
 		return mAdapter;
@@ -508,6 +1122,9 @@ public class ViewFlow extends AdapterView<Adapter> {
 	public void setAdapter(Adapter adapter, int initialPosition) {
 		if (mAdapter != null) {
 			mAdapter.unregisterDataSetObserver(mDataSetObserver);
+			// Views of the old adapter can not be handed to the new one
+			recycleViews();
+			mRecycler.clear();
 		}
 
 		mAdapter = adapter;
@@ -515,7 +1132,7 @@ public class ViewFlow extends AdapterView<Adapter> {
 		if (mAdapter != null) {
 			mDataSetObserver = new AdapterDataSetObserver();
 			mAdapter.registerDataSetObserver(mDataSetObserver);
-
+			mRecycler.setViewTypeCount(mAdapter.getViewTypeCount());
 		}
 		if (mAdapter == null || mAdapter.getCount() == 0)
 			return;
@@ -525,8 +1142,20 @@ public class ViewFlow extends AdapterView<Adapter> {
 	
 	@Override
 	public View getSelectedView() {
-		return (mCurrentBufferIndex < mLoadedViews.size() ? mLoadedViews
-				.get(mCurrentBufferIndex) : null);
+		return mLoadedViews.get(mCurrentAdapterIndex);
+	}
+
+	/**
+	 * Returns the {@link View} currently bound to the given adapter position.
+	 * The lookup is done in constant time.
+	 * 
+	 * @param position
+	 *            the position in the adapter
+	 * @return the bound {@link View} or null if the position is outside of
+	 *         the view buffer
+	 */
+	public View getViewForPosition(int position) {
+		return mLoadedViews.get(position);
 	}
 
     @Override
@@ -535,29 +1164,160 @@ public class ViewFlow extends AdapterView<Adapter> {
     }
 
 	/**
-	 * Set the FlowIndicator
+	 * Set the FlowIndicator, replacing any FlowIndicators added before.
 	 * 
 	 * @param flowIndicator
 	 */
 	public void setFlowIndicator(FlowIndicator flowIndicator) {
-		mIndicator = flowIndicator;
-		mIndicator.setViewFlow(this);
+		mIndicators.clear();
+		addFlowIndicator(flowIndicator);
+	}
+
+	/**
+	 * Add a FlowIndicator. Any number of FlowIndicators can be attached to a
+	 * ViewFlow. FlowIndicators which also implement
+	 * {@link ViewScrollListener} receive the scroll position as an adapter
+	 * position and offset instead of a scroll origin in pixels.
+	 * 
+	 * @param flowIndicator
+	 */
+	public void addFlowIndicator(FlowIndicator flowIndicator) {
+		if (!mIndicators.contains(flowIndicator))
+			mIndicators.add(flowIndicator);
+		flowIndicator.setViewFlow(this);
+		mScrollDirty = true;
+	}
+
+	public void removeFlowIndicator(FlowIndicator flowIndicator) {
+		mIndicators.remove(flowIndicator);
+	}
+
+	/**
+	 * Sets the maximum number of recycled views kept in total. When the limit
+	 * is reached the oldest recycled view is released. Defaults to the size of
+	 * the view buffer.
+	 * 
+	 * @param max
+	 *            the maximum number of recycled views
+	 */
+	public void setMaxRecycledViews(int max) {
+		mRecycler.setMaxScrap(max);
+	}
+
+	/**
+	 * Sets the maximum number of recycled views kept for each view type of
+	 * the adapter. Defaults to the size of the view buffer.
+	 * 
+	 * @param max
+	 *            the maximum number of recycled views per view type
+	 */
+	public void setMaxRecycledViewsPerType(int max) {
+		mRecycler.setMaxScrapPerType(max);
+	}
+
+	/**
+	 * Releases all recycled views currently kept for reuse. The views in the
+	 * view buffer are not affected.
+	 */
+	public void trimRecycledViews() {
+		mRecycler.clear();
+	}
+
+	/**
+	 * @return the number of times a recycled view of the requested view type
+	 *         could be handed to the adapter
+	 */
+	public int getRecycleHitCount() {
+		return mRecycler.mHits;
+	}
+
+	/**
+	 * @return the number of times no recycled view of the requested view type
+	 *         was available
+	 */
+	public int getRecycleMissCount() {
+		return mRecycler.mMisses;
 	}
 
 	protected void recycleViews() {
-		while (!mLoadedViews.isEmpty())
-			recycleView(mLoadedViews.remove());
+		while (!mLoadedViews.isEmpty()) {
+			int type = mLoadedViews.getFirstType();
+			scrapView(mLoadedViews.removeFirst(), type);
+		}
 	}
 
-	protected void recycleView(View v) {
+	/**
+	 * Called for every view which is no longer needed by the view buffer,
+	 * and for convert views the adapter did not use. The view is kept for
+	 * reuse and detached if it is still a child.
+	 * 
+	 * @param v
+	 *            the view, may be null
+	 * @param viewType
+	 *            the adapter view type of the view
+	 */
+	protected void recycleView(View v, int viewType) {
 		if (v == null)
 			return;
-		mRecycledViews.add(v);
-		detachViewFromParent(v);
+		cancelPrepare(v);
+		mRecycler.addScrapView(v, viewType);
+		if (v.getParent() == this)
+			detachViewFromParent(v);
+	}
+
+	/**
+	 * Called for every view the adapter is asked to convert.
+	 * 
+	 * @param viewType
+	 *            the adapter view type of the view
+	 * @return a recycled view of that type, or null if there is none
+	 */
+	protected View getRecycledView(int viewType) {
+		return mRecycler.getScrapView(viewType);
 	}
 
+	/**
+	 * Recycles a view as view type 0. Called instead of
+	 * {@link #recycleView(View, int)} while the adapter has a single view
+	 * type.
+	 * 
+	 * @deprecated recycled views are kept by view type, use
+	 *             {@link #recycleView(View, int)}
+	 */
+	@Deprecated
+	protected void recycleView(View v) {
+		recycleView(v, 0);
+	}
+
+	/**
+	 * Returns a recycled view of view type 0. Called instead of
+	 * {@link #getRecycledView(int)} while the adapter has a single view type.
+	 * 
+	 * @deprecated recycled views are kept by view type, use
+	 *             {@link #getRecycledView(int)}
+	 */
+	@Deprecated
 	protected View getRecycledView() {
-		return (mRecycledViews.isEmpty() ? null : mRecycledViews.remove(0));
+		return getRecycledView(0);
+	}
+
+	/**
+	 * Recycles a view through the protected hooks, so that subclasses which
+	 * override either of them see every recycled view.
+	 */
+	@SuppressWarnings("deprecation")
+	private void scrapView(View v, int viewType) {
+		if (mRecycler.mViewTypeCount == 1)
+			recycleView(v);
+		else
+			recycleView(v, viewType);
+	}
+
+	@SuppressWarnings("deprecation")
+	private View obtainScrapView(int viewType) {
+		if (mRecycler.mViewTypeCount == 1)
+			return getRecycledView();
+		return getRecycledView(viewType);
 	}
 
 	@Override
@@ -570,30 +1330,44 @@ public class ViewFlow extends AdapterView<Adapter> {
 		position = Math.max(position, 0);
 		position = Math.min(position, mAdapter.getCount()-1);
 
-		recycleViews();
-
-		View currentView = makeAndAddView(position, true);
-		mLoadedViews.addLast(currentView);
-
-		if (mViewInitializeListener != null)
-			mViewInitializeListener.onViewLazyInitialize(currentView, position);
+		View currentView;
+		if (!mLoadedViews.isEmpty()
+				&& Math.abs(position - mCurrentAdapterIndex) <= 2 * mSideBuffer) {
+			// The new buffer range overlaps the current one, keep the shared views
+			rebindBuffer(position, false);
+			currentView = mLoadedViews.get(position);
+		} else {
+			recycleViews();
+			startFill();
+
+			mLoadedViews.reset(position);
+			currentView = makeAndAddView(position, true);
+
+			if (mViewInitializeListener != null)
+				mViewInitializeListener.onViewLazyInitialize(currentView, position);
+
+			if (mIncrementalFill) {
+				scheduleFill(Math.max(0, position - mSideBuffer), Math.min(
+						mAdapter.getCount() - 1, position + mSideBuffer));
+			} else {
+				for(int offset = 1; mSideBuffer - offset >= 0; offset++) {
+					int leftIndex = position - offset;
+					int rightIndex = position + offset;
+					if(leftIndex >= 0)
+						makeAndAddView(leftIndex, false);
+					if(rightIndex < mAdapter.getCount())
+						makeAndAddView(rightIndex, true);
+				}
+			}
 
-		for(int offset = 1; mSideBuffer - offset >= 0; offset++) {
-			int leftIndex = position - offset;
-			int rightIndex = position + offset;
-			if(leftIndex >= 0)
-				mLoadedViews.addFirst(makeAndAddView(leftIndex, false));
-			if(rightIndex < mAdapter.getCount())
-				mLoadedViews.addLast(makeAndAddView(rightIndex, true));
+			mCurrentBufferIndex = mLoadedViews.indexOf(position);
+			mCurrentAdapterIndex = position;
 		}
 
-		mCurrentBufferIndex = mLoadedViews.indexOf(currentView);
-		mCurrentAdapterIndex = position;
-
 		requestLayout();
 		setVisibleView(mCurrentBufferIndex, false);
-		if (mIndicator != null) {
-			mIndicator.onSwitched(currentView, mCurrentAdapterIndex);
+		for (int i = 0; i < mIndicators.size(); i++) {
+			mIndicators.get(i).onSwitched(currentView, mCurrentAdapterIndex);
 		}
 		if (mViewSwitchListener != null) {
 			mViewSwitchListener.onSwitched(currentView, mCurrentAdapterIndex);
@@ -604,78 +1378,441 @@ public class ViewFlow extends AdapterView<Adapter> {
 		logBuffer();
 		recycleViews();
 		removeAllViewsInLayout();
-		mLazyInit.addAll(EnumSet.allOf(LazyInit.class));
+		mLazyInit.add(LazyInit.LEFT);
+		mLazyInit.add(LazyInit.RIGHT);
+		startFill();
+
+		// An empty adapter leaves the buffer empty below
+		if (mIncrementalFill && mAdapter.getCount() > 0) {
+			mLoadedViews.reset(mCurrentAdapterIndex);
+			View currentView = makeAndAddView(mCurrentAdapterIndex, true);
+			mCurrentBufferIndex = 0;
+			if (mViewInitializeListener != null)
+				mViewInitializeListener.onViewLazyInitialize(currentView, mCurrentAdapterIndex);
+			scheduleFill(Math.max(0, mCurrentAdapterIndex - mSideBuffer), Math.min(
+					mAdapter.getCount() - 1, mCurrentAdapterIndex + mSideBuffer));
+			requestLayout();
+			setVisibleView(mCurrentBufferIndex, true);
+			return;
+		}
 
+		mLoadedViews.reset(Math.max(0, mCurrentAdapterIndex - mSideBuffer));
 		for (int i = Math.max(0, mCurrentAdapterIndex - mSideBuffer); i < Math
 				.min(mAdapter.getCount(), mCurrentAdapterIndex + mSideBuffer
 						+ 1); i++) {
-			mLoadedViews.addLast(makeAndAddView(i, true));
+			makeAndAddView(i, true);
 			if (i == mCurrentAdapterIndex) {
 				mCurrentBufferIndex = mLoadedViews.size() - 1;
 				if (mViewInitializeListener != null)
-					mViewInitializeListener.onViewLazyInitialize(mLoadedViews.getLast(), mCurrentAdapterIndex);
+					mViewInitializeListener.onViewLazyInitialize(mLoadedViews.get(mCurrentAdapterIndex), mCurrentAdapterIndex);
 			}
 		}
 		logBuffer();
 		requestLayout();
+		setVisibleView(mCurrentBufferIndex, true);
+	}
+
+	/**
+	 * Rebuilds the view buffer around the given position, keeping the
+	 * buffered views which are still within the new buffer range. Views are
+	 * either matched by position, or by id after the adapter data has changed.
+	 * A view is only rebound if its position has changed, and the adapter is
+	 * only asked for new views for positions or ids that were not buffered
+	 * before.
+	 * 
+	 * @param position
+	 *            the new position of the current view
+	 * @param matchIds
+	 *            true to match buffered views by their stable ids, false to
+	 *            match them by position
+	 */
+	private void rebindBuffer(int position, boolean matchIds) {
+		final ViewBuffer oldViews = mLoadedViews;
+		final int first = Math.max(0, position - mSideBuffer);
+		final int last = Math.min(mAdapter.getCount() - 1, position + mSideBuffer);
+
+		// The whole buffer range is loaded below
+		cancelFill();
+
+		// All buffered views are reattached in their new order below
+		detachAllViewsFromParent();
+		mLoadedViews = mSpareBuffer;
+		mLoadedViews.reset(first);
+
+		// Take over the views which are still within the buffer range
+		for (int i = first; i <= last; i++) {
+			final long id;
+			final int viewType;
+			View view = null;
+			int oldIndex;
+			if (matchIds) {
+				id = mAdapter.getItemId(i);
+				viewType = mAdapter.getItemViewType(i);
+				for (oldIndex = oldViews.size() - 1; oldIndex >= 0; oldIndex--) {
+					if (oldViews.getIdAt(oldIndex) == id
+							&& oldViews.getTypeAt(oldIndex) == viewType
+							&& oldViews.getAt(oldIndex) != null) {
+						view = oldViews.takeAt(oldIndex);
+						break;
+					}
+				}
+			} else {
+				oldIndex = oldViews.indexOf(i);
+				if (oldIndex != -1) {
+					id = oldViews.getIdAt(oldIndex);
+					viewType = oldViews.getTypeAt(oldIndex);
+					view = oldViews.takeAt(oldIndex);
+				} else {
+					id = mAdapter.hasStableIds() ? mAdapter.getItemId(i)
+							: INVALID_ROW_ID;
+					viewType = mAdapter.getItemViewType(i);
+				}
+			}
+			mLoadedViews.addLast(view, viewType, id);
+			// Unchanged views are attached right away and are not rebound
+			if (view != null && oldViews.getFirstPosition() + oldIndex == i)
+				setupChild(view, true, true);
+		}
+
+		// Views which are no longer needed become scrap for the new positions
+		for (int i = 0; i < oldViews.size(); i++) {
+			scrapView(oldViews.getAt(i), oldViews.getTypeAt(i));
+		}
+		oldViews.clear();
+
+		// Bind the views for new or moved ids in buffer order. Views detached
+		// above have no parent until they are attached again.
+		for (int i = first; i <= last; i++) {
+			final View view = mLoadedViews.get(i);
+			if (view != null && view.getParent() == this)
+				continue;
+			final int viewType = mLoadedViews.getTypeAt(i - first);
+			if (view != null)
+				cancelPrepare(view);
+			final View convertView = view != null ? view : obtainScrapView(viewType);
+			final View newView = obtainView(i, convertView);
+			if (newView != convertView)
+				scrapView(convertView, viewType);
+			mLoadedViews.set(i, newView);
+			setupChild(newView, i - first, newView == convertView);
+			schedulePrepare(newView, i);
+		}
+		mSpareBuffer = oldViews;
+
+		mLazyInit.add(LazyInit.LEFT);
+		mLazyInit.add(LazyInit.RIGHT);
+		if (mViewInitializeListener != null)
+			mViewInitializeListener.onViewLazyInitialize(mLoadedViews.get(position), position);
+
+		mCurrentAdapterIndex = position;
+		mCurrentBufferIndex = mLoadedViews.indexOf(position);
+		logBuffer();
 	}
 
 	private void postViewSwitched(int direction) {
 		if (direction == 0)
 			return;
 
+		switchBuffer(direction);
+		setVisibleView(mCurrentBufferIndex, true);
+		notifyViewSwitched();
+		logBuffer();
+	}
+
+	/**
+	 * Moves the current position by the given number of views and updates
+	 * the view buffer accordingly.
+	 */
+	private void switchBuffer(int direction) {
+		final FlowMetrics metrics = mMetrics;
+		if (metrics != null) {
+			metrics.onSwitch();
+			metrics.beginSection("ViewFlow switch");
+		}
+		mCurrentAdapterIndex += direction;
 		if (direction > 0) { // to the right
-			mCurrentAdapterIndex++;
-			mCurrentBufferIndex++;
 			mLazyInit.remove(LazyInit.LEFT);
 			mLazyInit.add(LazyInit.RIGHT);
-
-			// Recycle view outside buffer range
-			if (mCurrentAdapterIndex > mSideBuffer) {
-				recycleView(mLoadedViews.removeFirst());
-				mCurrentBufferIndex--;
-			}
-
-			// Add new view to buffer
-			int newBufferIndex = mCurrentAdapterIndex + mSideBuffer;
-			if (newBufferIndex < mAdapter.getCount())
-				mLoadedViews.addLast(makeAndAddView(newBufferIndex, true));
-
 		} else { // to the left
-			mCurrentAdapterIndex--;
-			mCurrentBufferIndex--;
 			mLazyInit.add(LazyInit.LEFT);
 			mLazyInit.remove(LazyInit.RIGHT);
+		}
+		if (!updateBufferRange(direction))
+			requestLayout();
+		mCurrentBufferIndex = mLoadedViews.indexOf(mCurrentAdapterIndex);
+		if (metrics != null)
+			metrics.endSection();
+	}
 
-			// Recycle view outside buffer range
-			if (mAdapter.getCount() - 1 - mCurrentAdapterIndex > mSideBuffer) {
-				recycleView(mLoadedViews.removeLast());
-			}
+	private void notifyViewSwitched() {
+		View currentView = mLoadedViews.get(mCurrentAdapterIndex);
+		for (int i = 0; i < mIndicators.size(); i++) {
+			mIndicators.get(i).onSwitched(currentView, mCurrentAdapterIndex);
+		}
+		if (mViewSwitchListener != null) {
+			mViewSwitchListener.onSwitched(currentView, mCurrentAdapterIndex);
+		}
+	}
+
+	/**
+	 * Recycles the views that have left the buffer range around the current
+	 * position and loads the views that have entered it, the ones in the
+	 * direction of travel first.
+	 * 
+	 * If the ViewFlow has been laid out, only the new views are measured and
+	 * laid out while the others are moved, and the scroll position is adjusted
+	 * to keep the current view in place. No layout pass is needed then.
+	 * 
+	 * @param direction
+	 *            the direction of the last switch, or 0 if unknown
+	 * @return true if the children were laid out in place, false if a layout
+	 *         pass is required
+	 */
+	private boolean updateBufferRange(int direction) {
+		int before = mSideBuffer;
+		int after = mSideBuffer;
+		if (mAsymmetricBuffer && direction != 0) {
+			// Always keep the previous view for a quick swipe back
+			int behind = mLastFlingVelocity > FAST_FLING_VELOCITY ? 1
+					: Math.max(1, (mSideBuffer + 1) / 2);
+			behind = Math.min(behind, mSideBuffer);
+			int ahead = 2 * mSideBuffer - behind;
+			before = direction > 0 ? behind : ahead;
+			after = direction > 0 ? ahead : behind;
+		}
+		final int first = Math.max(0, mCurrentAdapterIndex - before);
+		final int last = Math.min(mAdapter.getCount() - 1, mCurrentAdapterIndex
+				+ after);
+
+		boolean inPlace = canLayoutInPlace();
+		final int oldFirst = mLoadedViews.getFirstPosition();
+		int addedFirst = 0;
+		int addedLast = 0;
+
+		// Recycle views outside buffer range
+		while (!mLoadedViews.isEmpty() && mLoadedViews.getFirstPosition() < first) {
+			int type = mLoadedViews.getFirstType();
+			scrapView(mLoadedViews.removeFirst(), type);
+		}
+		while (!mLoadedViews.isEmpty() && mLoadedViews.getLastPosition() > last) {
+			int type = mLoadedViews.getLastType();
+			scrapView(mLoadedViews.removeLast(), type);
+		}
+		if (mLoadedViews.isEmpty()) {
+			inPlace = false;
+			mLoadedViews.reset(mCurrentAdapterIndex);
+			makeAndAddView(mCurrentAdapterIndex, true);
+		}
 
-			// Add new view to buffer
-			int newBufferIndex = mCurrentAdapterIndex - mSideBuffer;
-			if (newBufferIndex > -1) {
-				mLoadedViews.addFirst(makeAndAddView(newBufferIndex, false));
-				mCurrentBufferIndex++;
+		if (mFillPending) {
+			// The new views are loaded by the pending fill
+			mFillFirst = first;
+			mFillLast = last;
+		} else {
+			// Add new views to buffer
+			if (direction >= 0) {
+				for (; mLoadedViews.getLastPosition() < last; addedLast++)
+					makeAndAddView(mLoadedViews.getLastPosition() + 1, true);
 			}
+			for (; mLoadedViews.getFirstPosition() > first; addedFirst++)
+				makeAndAddView(mLoadedViews.getFirstPosition() - 1, false);
+			for (; mLoadedViews.getLastPosition() < last; addedLast++)
+				makeAndAddView(mLoadedViews.getLastPosition() + 1, true);
+		}
 
+		if (inPlace) {
+			mCurrentBufferIndex = mLoadedViews.indexOf(mCurrentAdapterIndex);
+			layoutChildrenInPlace(addedFirst, addedLast);
+			final int pageShift = oldFirst - mLoadedViews.getFirstPosition();
+			if (pageShift != 0)
+				scrollTo(getScrollX() + pageShift * getWidth(), getScrollY());
+			invalidate();
 		}
+		return inPlace;
+	}
 
-		requestLayout();
-		setVisibleView(mCurrentBufferIndex, true);
-		if (mIndicator != null) {
-			mIndicator.onSwitched(mLoadedViews.get(mCurrentBufferIndex),
-					mCurrentAdapterIndex);
+	private boolean canLayoutInPlace() {
+		return !mFirstLayout && getWidth() > 0 && !isLayoutRequested();
+	}
+
+	/**
+	 * Enable or disable filling the view buffer incrementally. When enabled,
+	 * a view buffer filled from scratch only loads the current view right
+	 * away. Once it has been drawn, the remaining views are loaded nearest
+	 * first in the following frames, within a time budget per frame, so the
+	 * current view is shown as early as possible.
+	 * 
+	 * @param incremental
+	 *            true to fill the view buffer incrementally
+	 */
+	public void setIncrementalFill(boolean incremental) {
+		mIncrementalFill = incremental;
+		if (!incremental && mFillPending) {
+			mHandler.removeCallbacks(mFillRunnable);
+			fillBuffer(Long.MAX_VALUE);
 		}
-		if (mViewSwitchListener != null) {
-			mViewSwitchListener
-					.onSwitched(mLoadedViews.get(mCurrentBufferIndex),
-							mCurrentAdapterIndex);
+	}
+
+	/**
+	 * Set the listener that will receive the timings of the view buffer being
+	 * filled from scratch.
+	 * 
+	 * @param l
+	 *            the buffer fill listener
+	 */
+	public void setBufferFillListener(BufferFillListener l) {
+		mBufferFillListener = l;
+	}
+
+	/**
+	 * @return the time in milliseconds from the last time the view buffer was
+	 *         filled from scratch until the current view was drawn, or -1 if
+	 *         it has not been drawn yet
+	 */
+	public long getTimeToFirstPage() {
+		return mTimeToFirstPage;
+	}
+
+	private void startFill() {
+		if (mMetrics != null)
+			mMetrics.onFullReset();
+		cancelFill();
+		mFillStartTime = SystemClock.uptimeMillis();
+		mFirstPagePending = true;
+		mTimeToFirstPage = -1;
+	}
+
+	/**
+	 * Schedules loading the rest of the view buffer. The fill starts after
+	 * the first page has been drawn, see {@link #dispatchDraw(Canvas)}.
+	 */
+	private void scheduleFill(int first, int last) {
+		mFillFirst = first;
+		mFillLast = last;
+		mFillPending = true;
+		mHandler.removeCallbacks(mFillRunnable);
+		if (!mFirstPagePending)
+			mHandler.post(mFillRunnable);
+	}
+
+	private void cancelFill() {
+		if (mFillPending) {
+			mFillPending = false;
+			mHandler.removeCallbacks(mFillRunnable);
+		}
+	}
+
+	private void fillBuffer() {
+		if (mTouchState == TOUCH_STATE_SCROLLING || mNextScreen != INVALID_SCREEN) {
+			// Do not move the views under a gesture or a settle
+			mHandler.postDelayed(mFillRunnable, FILL_RETRY_DELAY);
+			return;
+		}
+		fillBuffer(FILL_FRAME_BUDGET);
+	}
+
+	/**
+	 * Loads the missing views of the view buffer, nearest to the current view
+	 * first, until the buffer is full or the time budget is spent.
+	 * 
+	 * @param budget
+	 *            the time budget in milliseconds
+	 */
+	private void fillBuffer(long budget) {
+		mFillPending = false;
+		if (mAdapter == null || mLoadedViews.isEmpty())
+			return;
+		final int first = Math.max(0, mFillFirst);
+		final int last = Math.min(mAdapter.getCount() - 1, mFillLast);
+		final long start = SystemClock.uptimeMillis();
+		int addedFirst = 0;
+		int addedLast = 0;
+		boolean filled;
+		do {
+			final int firstPosition = mLoadedViews.getFirstPosition();
+			final int lastPosition = mLoadedViews.getLastPosition();
+			final boolean canAddFirst = firstPosition > first;
+			final boolean canAddLast = lastPosition < last;
+			if (canAddLast
+					&& (!canAddFirst || lastPosition - mCurrentAdapterIndex <= mCurrentAdapterIndex
+							- firstPosition)) {
+				makeAndAddView(lastPosition + 1, true);
+				addedLast++;
+			} else if (canAddFirst) {
+				makeAndAddView(firstPosition - 1, false);
+				addedFirst++;
+			}
+			filled = mLoadedViews.getFirstPosition() <= first
+					&& mLoadedViews.getLastPosition() >= last;
+		} while (!filled && SystemClock.uptimeMillis() - start < budget);
+
+		if (addedFirst + addedLast > 0) {
+			mCurrentBufferIndex = mLoadedViews.indexOf(mCurrentAdapterIndex);
+			if (canLayoutInPlace()) {
+				layoutChildrenInPlace(addedFirst, addedLast);
+				invalidate();
+			} else {
+				requestLayout();
+			}
+			setVisibleView(mCurrentBufferIndex, true);
+			logBuffer();
+		}
+		if (!filled) {
+			mFillPending = true;
+			mHandler.post(mFillRunnable);
+		} else if (!mFirstPagePending) {
+			notifyBufferFilled();
+		}
+	}
+
+	private void notifyBufferFilled() {
+		if (mBufferFillListener != null)
+			mBufferFillListener.onBufferFilled(mCurrentAdapterIndex,
+					SystemClock.uptimeMillis() - mFillStartTime);
+	}
+
+	/**
+	 * Positions the children the way {@link #onLayout} would, measuring and
+	 * laying out only the views newly added at either end which are near the
+	 * viewport. The other children already have their size and are only
+	 * moved. The current buffer index must be up to date.
+	 * 
+	 * @param addedFirst
+	 *            the number of views added at the start
+	 * @param addedLast
+	 *            the number of views added at the end
+	 */
+	private void layoutChildrenInPlace(int addedFirst, int addedLast) {
+		final int pageWidth = getWidth();
+		int childLeft = 0;
+
+		final int count = getChildCount();
+		for (int i = 0; i < count; i++) {
+			final View child = getChildAt(i);
+			if (child.getVisibility() != View.GONE) {
+				if (i < addedFirst || i >= count - addedLast) {
+					if (isNearViewport(i, 0)) {
+						child.measure(mWidthMeasureSpec, mHeightMeasureSpec);
+						child.layout(childLeft, 0, childLeft + child.getMeasuredWidth(),
+								child.getMeasuredHeight());
+					} else {
+						mCulledMeasures++;
+						if (child.getLeft() != childLeft)
+							child.offsetLeftAndRight(childLeft - child.getLeft());
+					}
+				} else if (child.getLeft() != childLeft) {
+					child.offsetLeftAndRight(childLeft - child.getLeft());
+				}
+				childLeft += pageWidth;
+			}
 		}
-		logBuffer();
 	}
 
 	private View setupChild(View child, boolean addToEnd, boolean recycle) {
+		return setupChild(child, addToEnd ? -1 : 0, recycle);
+	}
+
+	private View setupChild(View child, int index, boolean recycle) {
 		ViewGroup.LayoutParams p = (ViewGroup.LayoutParams) child
 				.getLayoutParams();
 		if (p == null) {
@@ -684,37 +1821,368 @@ public class ViewFlow extends AdapterView<Adapter> {
 					ViewGroup.LayoutParams.WRAP_CONTENT, 0);
 		}
 		if (recycle)
-			attachViewToParent(child, (addToEnd ? -1 : 0), p);
+			attachViewToParent(child, index, p);
 		else
-			addViewInLayout(child, (addToEnd ? -1 : 0), p, true);
+			addViewInLayout(child, index, p, true);
 		return child;
 	}
 
+	/**
+	 * Obtains the {@link View} for the position from the adapter, adds it as
+	 * a child and to the first or last slot of the view buffer.
+	 */
 	private View makeAndAddView(int position, boolean addToEnd) {
-		return makeAndAddView(position, addToEnd, getRecycledView());
+		final int viewType = mAdapter.getItemViewType(position);
+		final View convertView = obtainScrapView(viewType);
+		View view = obtainView(position, convertView);
+		if (view != convertView)
+			scrapView(convertView, viewType);
+		setupChild(view, addToEnd, view == convertView);
+		final long id = mAdapter.hasStableIds() ? mAdapter.getItemId(position)
+				: INVALID_ROW_ID;
+		if (addToEnd)
+			mLoadedViews.addLast(view, viewType, id);
+		else
+			mLoadedViews.addFirst(view, viewType, id);
+		schedulePrepare(view, position);
+		return view;
+	}
+
+	/**
+	 * Asks the adapter for the view at position, timing the call if metrics
+	 * are enabled or a slow getView listener is set.
+	 */
+	private View obtainView(int position, View convertView) {
+		final FlowMetrics metrics = mMetrics;
+		if (metrics == null && mSlowGetViewListener == null)
+			return mAdapter.getView(position, convertView, this);
+
+		if (metrics != null)
+			metrics.beginSection("ViewFlow bind");
+		final long start = System.nanoTime();
+		final View view = mAdapter.getView(position, convertView, this);
+		final long micros = (System.nanoTime() - start) / 1000;
+		final boolean slow = mSlowGetViewListener != null
+				&& micros > mGetViewBudget * 1000;
+		if (metrics != null) {
+			metrics.endSection();
+			metrics.onGetView(micros, slow);
+		}
+		if (slow)
+			mSlowGetViewListener.onSlowGetView(position, micros / 1000);
+		return view;
+	}
+
+	/**
+	 * Enable or disable collecting metrics. Metrics are reset when enabled.
+	 * Collecting metrics has no cost while disabled.
+	 * 
+	 * @param enabled
+	 *            true to collect metrics
+	 */
+	public void setMetricsEnabled(boolean enabled) {
+		if (enabled)
+			mMetrics = new FlowMetrics();
+		else
+			mMetrics = null;
+	}
+
+	/**
+	 * @return the metrics collected since they were enabled, or null if
+	 *         metrics are disabled
+	 */
+	public FlowMetrics getMetrics() {
+		return mMetrics;
+	}
+
+	/**
+	 * Set a listener that will be called whenever the adapter takes longer
+	 * than the given budget to return a view.
+	 * 
+	 * @param l
+	 *            the listener, or null to stop watching the adapter
+	 * @param budgetMillis
+	 *            the time budget for a call to {@code getView}, typically a
+	 *            frame
+	 */
+	public void setSlowGetViewListener(SlowGetViewListener l, long budgetMillis) {
+		mSlowGetViewListener = l;
+		mGetViewBudget = budgetMillis;
+	}
+
+	/**
+	 * Prints the state of the view buffer, the recycled views and, if
+	 * enabled, the collected metrics.
+	 * 
+	 * @param pw
+	 *            the writer to print to
+	 */
+	public void dump(PrintWriter pw) {
+		pw.print("ViewFlow position: ");
+		pw.print(mCurrentAdapterIndex);
+		pw.print(", buffer index: ");
+		pw.print(mCurrentBufferIndex);
+		pw.print(", screen: ");
+		pw.print(mCurrentScreen);
+		pw.print(", scrollX: ");
+		pw.println(getScrollX());
+		pw.print("  side buffer: ");
+		pw.print(mSideBuffer);
+		pw.print(" (requested ");
+		pw.print(mRequestedSideBuffer);
+		pw.print("), memory pressure: ");
+		pw.println(mMemoryPressure);
+		pw.print("  buffer: ");
+		pw.print(mLoadedViews.size());
+		pw.print('/');
+		pw.print(mLoadedViews.capacity());
+		if (!mLoadedViews.isEmpty()) {
+			pw.print(", positions ");
+			pw.print(mLoadedViews.getFirstPosition());
+			pw.print('-');
+			pw.print(mLoadedViews.getLastPosition());
+		}
+		pw.print(", fill pending: ");
+		pw.println(mFillPending);
+		for (int i = 0; i < mLoadedViews.size(); i++) {
+			pw.print("    ");
+			pw.print(mLoadedViews.getFirstPosition() + i);
+			pw.print(": type ");
+			pw.print(mLoadedViews.getTypeAt(i));
+			pw.print(", id ");
+			pw.print(mLoadedViews.getIdAt(i));
+			pw.print(", ");
+			pw.println(mLoadedViews.getAt(i));
+		}
+		pw.print("  recycled: ");
+		pw.print(mRecycler.size());
+		pw.print(", hits: ");
+		pw.print(mRecycler.mHits);
+		pw.print(", misses: ");
+		pw.println(mRecycler.mMisses);
+		pw.print("  culled draws: ");
+		pw.print(mCulledDraws);
+		pw.print(", culled measures: ");
+		pw.println(mCulledMeasures);
+		if (mTimeToFirstPage >= 0) {
+			pw.print("  time to first page: ");
+			pw.print(mTimeToFirstPage);
+			pw.println("ms");
+		}
+		if (mMetrics != null)
+			mMetrics.dump(pw, "  ");
+		pw.flush();
+	}
+
+	/**
+	 * Set the {@link Executor} on which {@link PreparedAdapter#prepare(int)} is
+	 * called. By default a single background thread shared by all ViewFlows is
+	 * used.
+	 * 
+	 * @param executor
+	 *            the executor, or null to use the default one
+	 */
+	public void setPrepareExecutor(Executor executor) {
+		mPrepareExecutor = executor;
+	}
+
+	private Executor getPrepareExecutor() {
+		if (mPrepareExecutor != null)
+			return mPrepareExecutor;
+		return getDefaultPrepareExecutor();
+	}
+
+	private static Executor getDefaultPrepareExecutor() {
+		synchronized (ViewFlow.class) {
+			if (sDefaultPrepareExecutor == null)
+				sDefaultPrepareExecutor = newBackgroundExecutor("ViewFlow prepare");
+			return sDefaultPrepareExecutor;
+		}
+	}
+
+	/**
+	 * Creates an executor running tasks one at a time on a daemon thread with
+	 * background priority.
+	 * 
+	 * @param name
+	 *            the name of the thread
+	 */
+	static ExecutorService newBackgroundExecutor(final String name) {
+		return Executors.newSingleThreadExecutor(new ThreadFactory() {
+
+			@Override
+			public Thread newThread(final Runnable r) {
+				Thread thread = new Thread(new Runnable() {
+
+					@Override
+					public void run() {
+						Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+						r.run();
+					}
+				}, name);
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+	}
+
+	/**
+	 * Schedules the preparation of the data for a view which has just been
+	 * returned by {@code getView}, if the adapter is a {@link PreparedAdapter}.
+	 */
+	@SuppressWarnings("unchecked")
+	private void schedulePrepare(View view, int position) {
+		if (!(mAdapter instanceof PreparedAdapter))
+			return;
+		cancelPrepare(view);
+		PrepareTask task = new PrepareTask((PreparedAdapter<Object>) mAdapter,
+				view, position);
+		mPrepareTasks.add(task);
+		getPrepareExecutor().execute(task);
+	}
+
+	/**
+	 * Cancels the pending preparation for a view leaving the view buffer.
+	 */
+	private void cancelPrepare(View view) {
+		for (int i = mPrepareTasks.size() - 1; i >= 0; i--) {
+			final PrepareTask task = mPrepareTasks.get(i);
+			if (task.mView == view) {
+				task.mCancelled = true;
+				mPrepareTasks.remove(i);
+			}
+		}
+	}
+
+	/**
+	 * Prepares the data for a view on the background thread and binds it on
+	 * the UI thread, unless cancelled in between. If preparing fails, the
+	 * view is prepared and bound synchronously on the UI thread instead.
+	 */
+	private class PrepareTask implements Runnable {
+		final PreparedAdapter<Object> mPreparedAdapter;
+		final View mView;
+		final int mPosition;
+		volatile boolean mCancelled;
+		private Object mPrepared;
+		private RuntimeException mError;
+
+		PrepareTask(PreparedAdapter<Object> adapter, View view, int position) {
+			mPreparedAdapter = adapter;
+			mView = view;
+			mPosition = position;
+		}
+
+		@Override
+		public void run() {
+			if (mCancelled)
+				return;
+			try {
+				mPrepared = mPreparedAdapter.prepare(mPosition);
+			} catch (RuntimeException e) {
+				// Delivered to the UI thread, so that the task is cleared
+				mError = e;
+			}
+			mHandler.post(new Runnable() {
+
+				@Override
+				public void run() {
+					if (mCancelled)
+						return;
+					mPrepareTasks.remove(PrepareTask.this);
+					if (mAdapter != mPreparedAdapter
+							|| mLoadedViews.get(mPosition) != mView)
+						return;
+					if (mError != null) {
+						// Prepare again on the UI thread, where a second
+						// failure is thrown like one from getView()
+						Log.w(TAG, "prepare(" + mPosition
+								+ ") failed, preparing on the UI thread", mError);
+						mPrepared = mPreparedAdapter.prepare(mPosition);
+					}
+					mPreparedAdapter.bind(mView, mPosition, mPrepared);
+				}
+			});
+		}
 	}
 
-	private View makeAndAddView(int position, boolean addToEnd, View convertView) {
-		View view = mAdapter.getView(position, convertView, this);
-		if(view != convertView)
-			mRecycledViews.add(convertView);
-		return setupChild(view, addToEnd, view == convertView);
+	/**
+	 * Implements ComponentCallbacks2 through a proxy, only on API level 14
+	 * and above.
+	 */
+	private class MemoryPressureCallbacks implements InvocationHandler {
+
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args) {
+			final String name = method.getName();
+			if ("onTrimMemory".equals(name)) {
+				// Hiding the UI is not memory pressure, the buffer is kept
+				// for when the user returns
+				final int level = (Integer) args[0];
+				if (level >= TRIM_MEMORY_RUNNING_LOW
+						&& level != TRIM_MEMORY_UI_HIDDEN)
+					onMemoryPressure();
+			} else if ("onLowMemory".equals(name)) {
+				onMemoryPressure();
+			} else if ("equals".equals(name)) {
+				return proxy == args[0];
+			} else if ("hashCode".equals(name)) {
+				return System.identityHashCode(proxy);
+			} else if ("toString".equals(name)) {
+				return "ViewFlow memory callbacks";
+			}
+			return null;
+		}
 	}
 
 	class AdapterDataSetObserver extends DataSetObserver {
 
 		@Override
 		public void onChanged() {
-			View v = getChildAt(mCurrentBufferIndex);
-			if (v != null) {
-				for (int index = 0; index < mAdapter.getCount(); index++) {
-					if (v.equals(mAdapter.getItem(index))) {
-						mCurrentAdapterIndex = index;
-						break;
+			final int count = mAdapter.getCount();
+			if (mAdapter.hasStableIds() && !mLoadedViews.isEmpty() && count > 0) {
+				// Follow the current item to its new position
+				int position = findPositionForId(
+						mLoadedViews.getIdAt(mCurrentBufferIndex),
+						mCurrentAdapterIndex, count);
+				if (position == INVALID_POSITION)
+					position = Math.min(mCurrentAdapterIndex, count - 1);
+				final int oldPosition = mCurrentAdapterIndex;
+				rebindBuffer(position, true);
+				requestLayout();
+				setVisibleView(mCurrentBufferIndex, true);
+				if (position != oldPosition) {
+					View currentView = mLoadedViews.get(position);
+					for (int i = 0; i < mIndicators.size(); i++) {
+						mIndicators.get(i).onSwitched(currentView, position);
+					}
+					if (mViewSwitchListener != null) {
+						mViewSwitchListener.onSwitched(currentView, position);
 					}
 				}
+			} else {
+				mCurrentAdapterIndex = Math.max(0,
+						Math.min(mCurrentAdapterIndex, count - 1));
+				resetFocus();
 			}
-			resetFocus();
+		}
+
+		/**
+		 * Searches the adapter for the id, starting at the given position and
+		 * moving outwards, since items rarely move far.
+		 */
+		private int findPositionForId(long id, int start, int count) {
+			for (int offset = 0; start - offset >= 0 || start + offset < count; offset++) {
+				int leftIndex = start - offset;
+				int rightIndex = start + offset;
+				if (leftIndex >= 0 && leftIndex < count
+						&& mAdapter.getItemId(leftIndex) == id)
+					return leftIndex;
+				if (rightIndex >= 0 && rightIndex < count
+						&& mAdapter.getItemId(rightIndex) == id)
+					return rightIndex;
+			}
+			return INVALID_POSITION;
 		}
 
 		@Override
@@ -724,12 +2192,163 @@ public class ViewFlow extends AdapterView<Adapter> {
 
 	}
 
+	/**
+	 * Keeps the {@link View}s removed from the view buffer for reuse as
+	 * convertView. Scrap views are matched by the view type reported by
+	 * {@link Adapter#getItemViewType(int)}, so the adapter is only ever handed
+	 * a convertView of the type it asked for. The bin is bounded both per view
+	 * type and in total; when full, the oldest scrap view is evicted.
+	 */
+	class RecycleBin {
+		/* Scrap views in the order they were added, oldest first */
+		private View[] mScrapViews;
+		private int[] mScrapTypes;
+		private int mScrapCount;
+		private int[] mTypeCounts;
+		private int mViewTypeCount;
+		private int mMaxScrap = -1;
+		private int mMaxScrapPerType = -1;
+		private int mHits;
+		private int mMisses;
+
+		RecycleBin() {
+			mScrapViews = new View[0];
+			mScrapTypes = new int[0];
+			setViewTypeCount(1);
+		}
+
+		void setViewTypeCount(int viewTypeCount) {
+			if (viewTypeCount < 1) {
+				throw new IllegalArgumentException("Can't have a viewTypeCount < 1");
+			}
+			clear();
+			mViewTypeCount = viewTypeCount;
+			mTypeCounts = new int[viewTypeCount];
+		}
+
+		void setMaxScrap(int max) {
+			mMaxScrap = max;
+			trim();
+		}
+
+		void setMaxScrapPerType(int max) {
+			mMaxScrapPerType = max;
+			trim();
+		}
+
+		private int maxScrap() {
+			return mMaxScrap < 0 ? mLoadedViews.capacity() : mMaxScrap;
+		}
+
+		private int maxScrapPerType() {
+			return mMaxScrapPerType < 0 ? mLoadedViews.capacity()
+					: mMaxScrapPerType;
+		}
+
+		private boolean shouldRecycleViewType(int viewType) {
+			return viewType >= 0 && viewType < mViewTypeCount;
+		}
+
+		View getScrapView(int viewType) {
+			if (shouldRecycleViewType(viewType) && mTypeCounts[viewType] > 0) {
+				// Prefer the most recently scrapped view
+				for (int i = mScrapCount - 1; i >= 0; i--) {
+					if (mScrapTypes[i] == viewType) {
+						mHits++;
+						return removeScrapAt(i);
+					}
+				}
+			}
+			mMisses++;
+			return null;
+		}
+
+		void addScrapView(View scrap, int viewType) {
+			if (scrap == null)
+				return;
+			final int maxScrap = maxScrap();
+			if (!shouldRecycleViewType(viewType) || maxScrap == 0
+					|| maxScrapPerType() == 0) {
+				removeDetachedView(scrap, false);
+				return;
+			}
+			while (mTypeCounts[viewType] >= maxScrapPerType())
+				evictOldest(viewType);
+			while (mScrapCount >= maxScrap)
+				evictOldest(Adapter.IGNORE_ITEM_VIEW_TYPE);
+			if (mScrapCount == mScrapViews.length) {
+				final int capacity = Math.max(mScrapCount + 1, maxScrap);
+				View[] scrapViews = new View[capacity];
+				int[] scrapTypes = new int[capacity];
+				System.arraycopy(mScrapViews, 0, scrapViews, 0, mScrapCount);
+				System.arraycopy(mScrapTypes, 0, scrapTypes, 0, mScrapCount);
+				mScrapViews = scrapViews;
+				mScrapTypes = scrapTypes;
+			}
+			mScrapViews[mScrapCount] = scrap;
+			mScrapTypes[mScrapCount] = viewType;
+			mScrapCount++;
+			mTypeCounts[viewType]++;
+		}
+
+		/**
+		 * Evicts the oldest scrap view of the given type, or of any type if
+		 * {@link Adapter#IGNORE_ITEM_VIEW_TYPE} is given.
+		 */
+		private void evictOldest(int viewType) {
+			for (int i = 0; i < mScrapCount; i++) {
+				if (viewType == Adapter.IGNORE_ITEM_VIEW_TYPE
+						|| mScrapTypes[i] == viewType) {
+					removeDetachedView(removeScrapAt(i), false);
+					return;
+				}
+			}
+		}
+
+		private View removeScrapAt(int index) {
+			final View scrap = mScrapViews[index];
+			mTypeCounts[mScrapTypes[index]]--;
+			mScrapCount--;
+			System.arraycopy(mScrapViews, index + 1, mScrapViews, index,
+					mScrapCount - index);
+			System.arraycopy(mScrapTypes, index + 1, mScrapTypes, index,
+					mScrapCount - index);
+			mScrapViews[mScrapCount] = null;
+			return scrap;
+		}
+
+		/**
+		 * Evicts the oldest scrap views until the bin is within its bounds.
+		 */
+		void trim() {
+			final int maxScrapPerType = maxScrapPerType();
+			for (int type = 0; type < mViewTypeCount; type++) {
+				while (mTypeCounts[type] > maxScrapPerType)
+					evictOldest(type);
+			}
+			final int maxScrap = maxScrap();
+			while (mScrapCount > maxScrap)
+				evictOldest(Adapter.IGNORE_ITEM_VIEW_TYPE);
+		}
+
+		int size() {
+			return mScrapCount;
+		}
+
+		void clear() {
+			while (mScrapCount > 0)
+				removeDetachedView(removeScrapAt(mScrapCount - 1), false);
+		}
+	}
+
 	private void logBuffer() {
+		if (!Log.isLoggable(TAG, Log.DEBUG))
+			return;
 
-		Log.d("viewflow", "Size of mLoadedViews: " + mLoadedViews.size() +
-				", Size of mRecycledViews: " + mRecycledViews.size() +
-				", X: " + mScroller.getCurrX() + ", Y: " + mScroller.getCurrY());
-		Log.d("viewflow", "IndexInAdapter: " + mCurrentAdapterIndex
+		Log.d(TAG, "Size of mLoadedViews: " + mLoadedViews.size() +
+				", Size of mRecycledViews: " + mRecycler.size() +
+				", X: " + mScroller.getCurrX() + ", Y: " + getScrollY());
+		Log.d(TAG, "IndexInAdapter: " + mCurrentAdapterIndex
 				+ ", IndexInBuffer: " + mCurrentBufferIndex);
 	}
 }